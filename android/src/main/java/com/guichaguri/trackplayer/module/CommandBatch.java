@@ -0,0 +1,174 @@
+package com.guichaguri.trackplayer.module;
+
+import android.os.Bundle;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.guichaguri.trackplayer.service.MusicBinder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a list of player operations in order in the service thread, resolving once with the result of each one.
+ *
+ * Operations that settle synchronously are run in the same message. When one settles asynchronously,
+ * the next operation only runs after it, so the player is always in the state the previous one left it.
+ * An operation that doesn't settle within the timeout is reported as failed and the batch moves on.
+ *
+ * @author Guichaguri
+ */
+public class CommandBatch implements Runnable {
+
+    /**
+     * How long an operation can take to settle in milliseconds before the batch moves on
+     */
+    private static final long OPERATION_TIMEOUT = 10000;
+
+    public interface Executor {
+        void execute(String op, List args, Promise promise) throws Exception;
+    }
+
+    private final MusicBinder binder;
+    private final List<Bundle> commands;
+    private final Executor executor;
+    private final Promise callback;
+    private final WritableArray results = Arguments.createArray();
+    private final Runnable canceller = this::cancel;
+
+    private int index = 0;
+    private int pending = -1;
+    private boolean executing = false;
+    private boolean finished = false;
+
+    public CommandBatch(MusicBinder binder, List<Bundle> commands, Executor executor, Promise callback) {
+        this.binder = binder;
+        this.commands = commands;
+        this.executor = executor;
+        this.callback = callback;
+    }
+
+    @Override
+    public void run() {
+        // Holds back the intermediate state events. The canceller is called if the player is destroyed midway.
+        if(!binder.beginBatch(canceller)) {
+            callback.reject("player_destroyed", "The player has been destroyed");
+            return;
+        }
+
+        next();
+    }
+
+    private void next() {
+        while(index < commands.size()) {
+            final int position = index++;
+            Bundle command = commands.get(position);
+            final String op = command.getString("op");
+            List args = (List)command.getSerializable("args");
+            if(args == null) args = new ArrayList();
+
+            Promise promise = new PromiseImpl(
+                    (values) -> onSettled(position, op, values.length > 0 ? values[0] : null, null),
+                    (values) -> onSettled(position, op, null, values.length > 0 ? (ReadableMap)values[0] : null));
+
+            pending = position;
+            executing = true;
+
+            try {
+                executor.execute(op, args, promise);
+            } catch(Exception ex) {
+                promise.reject("invalid_arguments", ex);
+            }
+
+            executing = false;
+
+            if(pending == position) {
+                // Continues once the operation settles, or gives up on it after the timeout
+                binder.postDelayed(() -> onTimeout(position, op), OPERATION_TIMEOUT);
+                return;
+            }
+        }
+
+        finished = true;
+        binder.endBatch(canceller);
+        callback.resolve(results);
+    }
+
+    private void onSettled(int position, String op, Object result, ReadableMap error) {
+        // Ignores operations that settle after timing out or after the batch was cancelled
+        if(position != pending) return;
+        pending = -1;
+
+        if(error != null) {
+            addError(op, getString(error, "code"), getString(error, "message"));
+        } else {
+            WritableMap entry = Arguments.createMap();
+            entry.putString("op", op);
+            putResult(entry, result);
+            results.pushMap(entry);
+        }
+
+        if(!executing) next();
+    }
+
+    private void onTimeout(int position, String op) {
+        if(position != pending) return;
+        pending = -1;
+
+        addError(op, "timeout", "The operation didn't finish in time");
+        next();
+    }
+
+    /**
+     * Called in the service thread when the player is destroyed before the batch finishes
+     */
+    private void cancel() {
+        if(finished) return;
+        finished = true;
+
+        // The operation in progress and the remaining ones won't run anymore
+        int from = pending != -1 ? pending : index;
+        pending = -1;
+
+        for(int i = from; i < commands.size(); i++) {
+            addError(commands.get(i).getString("op"), "player_destroyed", "The player has been destroyed");
+        }
+
+        index = commands.size();
+        callback.resolve(results);
+    }
+
+    private void addError(String op, String code, String message) {
+        WritableMap err = Arguments.createMap();
+        err.putString("code", code);
+        err.putString("message", message);
+
+        WritableMap entry = Arguments.createMap();
+        entry.putString("op", op);
+        entry.putMap("error", err);
+        results.pushMap(entry);
+    }
+
+    private static String getString(ReadableMap map, String key) {
+        return map.hasKey(key) && !map.isNull(key) ? map.getString(key) : null;
+    }
+
+    private static void putResult(WritableMap entry, Object result) {
+        if(result == null) {
+            entry.putNull("result");
+        } else if(result instanceof Boolean) {
+            entry.putBoolean("result", (Boolean)result);
+        } else if(result instanceof Number) {
+            entry.putDouble("result", ((Number)result).doubleValue());
+        } else if(result instanceof WritableMap) {
+            entry.putMap("result", (WritableMap)result);
+        } else if(result instanceof WritableArray) {
+            entry.putArray("result", (WritableArray)result);
+        } else {
+            entry.putString("result", result.toString());
+        }
+    }
+
+}
@@ -1,18 +1,25 @@
 package com.guichaguri.trackplayer.module;
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
 import android.os.Bundle;
+import android.text.TextUtils;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule.RCTDeviceEventEmitter;
+import com.guichaguri.trackplayer.service.Metrics;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
+ * Delivers the service events to JS.
+ *
+ * Events are queued and flushed in the JS thread. While they're waiting, superseded
+ * events are coalesced: only the latest state and progress are kept, and bursts of
+ * metadata are merged into a single event.
+ *
  * @author Guichaguri
  */
-public class MusicEvents extends BroadcastReceiver {
+public class MusicEvents implements Runnable {
 
     // Media Control Events
     public static final String BUTTON_PLAY = "remote-play";
@@ -28,28 +35,126 @@ public class MusicEvents extends BroadcastReceiver {
     public static final String BUTTON_JUMP_FORWARD = "remote-jump-forward";
     public static final String BUTTON_JUMP_BACKWARD = "remote-jump-backward";
     public static final String BUTTON_DUCK = "remote-duck";
+    public static final String BUTTON_HANDLED = "remote-handled";
 
     // Playback Events
     public static final String PLAYBACK_STATE = "playback-state";
     public static final String PLAYBACK_TRACK_CHANGED = "playback-track-changed";
     public static final String PLAYBACK_QUEUE_ENDED = "playback-queue-ended";
+    public static final String PLAYBACK_QUEUE_CHANGED = "playback-queue-changed";
     public static final String PLAYBACK_METADATA = "playback-metadata-received";
     public static final String PLAYBACK_ERROR = "playback-error";
+    public static final String PLAYBACK_PROGRESS = "playback-progress";
+
+    // Browse Events
+    public static final String BROWSE_CHILDREN_REQUEST = "browse-children-request";
+
+    private static volatile MusicEvents instance;
 
     private final ReactContext reactContext;
+    private final List<Event> pending = new ArrayList<>();
+    private boolean scheduled = false;
 
     public MusicEvents(ReactContext reactContext) {
         this.reactContext = reactContext;
     }
 
+    /**
+     * Sets the instance that will receive the service events
+     */
+    public static void register(MusicEvents events) {
+        instance = events;
+    }
+
+    public static void unregister(MusicEvents events) {
+        if(instance == events) instance = null;
+    }
+
+    /**
+     * Sends an event to JS. Can be called from any thread.
+     * @param event The event name
+     * @param data The event data, which should not be changed afterwards
+     */
+    public static void dispatch(String event, Bundle data) {
+        MusicEvents events = instance;
+
+        if(events == null) {
+            Metrics.increment("eventsDropped");
+            return;
+        }
+
+        events.enqueue(event, data);
+    }
+
+    private synchronized void enqueue(String event, Bundle data) {
+        if(PLAYBACK_STATE.equals(event) || PLAYBACK_PROGRESS.equals(event)) {
+            // Only the latest one matters
+            for(int i = 0; i < pending.size(); i++) {
+                if(!pending.get(i).name.equals(event)) continue;
+
+                pending.remove(i);
+                Metrics.increment("eventsCoalesced");
+                break;
+            }
+        } else if(PLAYBACK_METADATA.equals(event) && data != null && !pending.isEmpty()) {
+            Event last = pending.get(pending.size() - 1);
+
+            // Metadata from different sources, such as the icy headers and the icy stream, is kept apart
+            if(last.name.equals(event) && last.data != null
+                    && TextUtils.equals(last.data.getString("source"), data.getString("source"))) {
+                // Merges the fields that were received
+                for(String key : data.keySet()) {
+                    if(data.get(key) != null) last.data.putString(key, data.getString(key));
+                }
+
+                Metrics.increment("eventsCoalesced");
+                return;
+            }
+        }
+
+        pending.add(new Event(event, data != null && PLAYBACK_METADATA.equals(event) ? new Bundle(data) : data));
+
+        if(!scheduled) {
+            scheduled = true;
+            reactContext.runOnJSQueueThread(this);
+        }
+    }
+
     @Override
-    public void onReceive(Context context, Intent intent) {
-        String event = intent.getStringExtra("event");
-        Bundle data = intent.getBundleExtra("data");
+    public void run() {
+        Event[] events;
+
+        synchronized(this) {
+            events = pending.toArray(new Event[0]);
+            pending.clear();
+            scheduled = false;
+        }
+
+        if(!reactContext.hasActiveCatalystInstance()) {
+            Metrics.add("eventsDropped", events.length);
+            return;
+        }
+
+        RCTDeviceEventEmitter emitter = reactContext.getJSModule(RCTDeviceEventEmitter.class);
+
+        for(Event event : events) {
+            WritableMap map = event.data != null ? Arguments.fromBundle(event.data) : null;
+
+            emitter.emit(event.name, map);
+            Metrics.increment("eventsEmitted");
+        }
+    }
+
+    private static class Event {
+
+        final String name;
+        final Bundle data;
 
-        WritableMap map = data != null ? Arguments.fromBundle(data) : null;
+        Event(String name, Bundle data) {
+            this.name = name;
+            this.data = data;
+        }
 
-        reactContext.getJSModule(RCTDeviceEventEmitter.class).emit(event, map);
     }
 
 }
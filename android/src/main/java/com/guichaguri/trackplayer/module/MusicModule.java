@@ -2,24 +2,33 @@ package com.guichaguri.trackplayer.module;
 
 import android.content.ComponentName;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.os.SystemClock;
+import android.support.v4.media.MediaBrowserCompat.MediaItem;
 import android.support.v4.media.RatingCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import com.facebook.react.bridge.*;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.guichaguri.trackplayer.BuildConfig;
+import com.guichaguri.trackplayer.service.Metrics;
 import com.guichaguri.trackplayer.service.MusicBinder;
 import com.guichaguri.trackplayer.service.MusicService;
 import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.metadata.BrowseCatalog;
+import com.guichaguri.trackplayer.service.models.QueueSnapshot;
 import com.guichaguri.trackplayer.service.models.Track;
+import com.guichaguri.trackplayer.service.models.TrackQueue;
 import com.guichaguri.trackplayer.service.player.ExoPlayback;
+import com.guichaguri.trackplayer.service.player.PlaybackSnapshot;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.json.JSONException;
+import org.json.JSONObject;
 import java.util.*;
 
 /**
@@ -27,10 +36,11 @@ import java.util.*;
  */
 public class MusicModule extends ReactContextBaseJavaModule implements ServiceConnection {
 
-    private MusicBinder binder;
+    private volatile MusicBinder binder;
     private MusicEvents eventHandler;
     private ArrayDeque<Runnable> initCallbacks = new ArrayDeque<>();
     private boolean connecting = false;
+    private long connectStart;
     private Bundle options;
 
     public MusicModule(ReactApplicationContext reactContext) {
@@ -45,21 +55,49 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
 
     @Override
     public void initialize() {
-        ReactContext context = getReactApplicationContext();
-        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(context);
+        eventHandler = new MusicEvents(getReactApplicationContext());
+        MusicEvents.register(eventHandler);
 
-        eventHandler = new MusicEvents(context);
-        manager.registerReceiver(eventHandler, new IntentFilter(Utils.EVENT_INTENT));
+        if(BuildConfig.PREWARM_OPTIONS != null) prewarm();
+    }
+
+    /**
+     * Starts the service and creates the player in its thread ahead of the first call, as set in track-player.json
+     */
+    private void prewarm() {
+        try {
+            Bundle options = toBundle(new JSONObject(BuildConfig.PREWARM_OPTIONS));
+            waitForConnection(() -> binder.prewarm(options));
+        } catch(Exception ex) {
+            // The player will be created when it's set up instead
+            Log.w(Utils.LOG, "Could not prewarm the player", ex);
+        }
+    }
+
+    private static Bundle toBundle(JSONObject json) throws JSONException {
+        Bundle bundle = new Bundle();
+        Iterator<String> keys = json.keys();
+
+        while(keys.hasNext()) {
+            String key = keys.next();
+            Object value = json.get(key);
+
+            if(value instanceof Number) {
+                bundle.putDouble(key, ((Number)value).doubleValue());
+            } else if(value instanceof Boolean) {
+                bundle.putBoolean(key, (Boolean)value);
+            } else {
+                bundle.putString(key, value.toString());
+            }
+        }
+
+        return bundle;
     }
 
     @Override
     public void onCatalystInstanceDestroy() {
-        ReactContext context = getReactApplicationContext();
-
         if(eventHandler != null) {
-            LocalBroadcastManager manager = LocalBroadcastManager.getInstance(context);
-
-            manager.unregisterReceiver(eventHandler);
+            MusicEvents.unregister(eventHandler);
             eventHandler = null;
         }
     }
@@ -69,9 +107,13 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
         binder = (MusicBinder)service;
         connecting = false;
 
-        // Reapply options that user set before with updateOptions
+        Metrics.recordTime("serviceConnect", SystemClock.elapsedRealtime() - connectStart);
+
+        // Reapply options that user set before with updateOptions, in the player thread
+        final Bundle options = this.options;
+
         if (options != null) {
-            binder.updateOptions(options);
+            binder.post(() -> binder.updateOptions(options));
         }
 
         // Triggers all callbacks
@@ -99,6 +141,7 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
 
         if(connecting) return;
 
+        connectStart = SystemClock.elapsedRealtime();
         ReactApplicationContext context = getReactApplicationContext();
 
         // Binds the service to get a MediaWrapper instance
@@ -140,6 +183,11 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
         constants.put("STATE_BUFFERING", PlaybackStateCompat.STATE_BUFFERING);
         constants.put("STATE_CONNECTING", PlaybackStateCompat.STATE_CONNECTING);
 
+        // Repeat Modes
+        constants.put("REPEAT_OFF", Player.REPEAT_MODE_OFF);
+        constants.put("REPEAT_TRACK", Player.REPEAT_MODE_ONE);
+        constants.put("REPEAT_QUEUE", Player.REPEAT_MODE_ALL);
+
         // Rating Types
         constants.put("RATING_HEART", RatingCompat.RATING_HEART);
         constants.put("RATING_THUMBS_UP_DOWN", RatingCompat.RATING_THUMB_UP_DOWN);
@@ -189,102 +237,176 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
     public void add(ReadableArray tracks, final String insertBeforeId, final Promise callback) {
         final ArrayList bundleList = Arguments.toList(tracks);
 
-        waitForConnection(() -> {
-            List<Track> trackList;
+        waitForConnection(() -> addTracks(bundleList, insertBeforeId, callback));
+    }
 
-            try {
-                trackList = Track.createTracks(getReactApplicationContext(), bundleList, binder.getRatingType());
-            } catch(Exception ex) {
-                callback.reject("invalid_track_object", ex);
-                return;
-            }
+    private void addTracks(List bundleList, String insertBeforeId, Promise callback) {
+        List<Track> trackList;
 
-            List<Track> queue = binder.getPlayback().getQueue();
-            int index = -1;
+        try {
+            trackList = Track.createTracks(getReactApplicationContext(), bundleList, binder.getRatingType());
+        } catch(Exception ex) {
+            callback.reject("invalid_track_object", ex);
+            return;
+        }
 
-            if(insertBeforeId != null) {
-                for(int i = 0; i < queue.size(); i++) {
-                    if(queue.get(i).id.equals(insertBeforeId)) {
-                        index = i;
-                        break;
-                    }
-                }
-            } else {
-                index = queue.size();
-            }
+        TrackQueue queue = binder.getPlayback().getQueue();
+        int index = insertBeforeId != null ? queue.indexOfId(insertBeforeId) : queue.size();
 
-            if(index == -1) {
-                callback.reject("track_not_in_queue", "Given track ID was not found in queue");
-            } else if(trackList == null || trackList.isEmpty()) {
-                callback.reject("invalid_track_object", "Track is missing a required key");
-            } else if(trackList.size() == 1) {
-                binder.getPlayback().add(trackList.get(0), index, callback);
-            } else {
-                binder.getPlayback().add(trackList, index, callback);
-            }
-        });
+        if(index == -1) {
+            callback.reject("track_not_in_queue", "Given track ID was not found in queue");
+        } else if(trackList == null || trackList.isEmpty()) {
+            callback.reject("invalid_track_object", "Track is missing a required key");
+        } else if(trackList.size() == 1) {
+            binder.getPlayback().add(trackList.get(0), index, callback);
+        } else {
+            binder.getPlayback().add(trackList, index, callback);
+        }
+    }
+
+    @ReactMethod
+    public void setQueue(ReadableArray tracks, final String startId, final double startPosition, final Promise callback) {
+        final ArrayList bundleList = Arguments.toList(tracks);
+
+        waitForConnection(() -> replaceQueue(bundleList, startId, startPosition, callback));
+    }
+
+    private void replaceQueue(List bundleList, String startId, double startPosition, Promise callback) {
+        List<Track> trackList;
+
+        try {
+            trackList = Track.createTracks(getReactApplicationContext(), bundleList, binder.getRatingType());
+        } catch(Exception ex) {
+            callback.reject("invalid_track_object", ex);
+            return;
+        }
+
+        if(trackList == null) {
+            callback.reject("invalid_track_object", "Track is missing a required key");
+            return;
+        }
+
+        if(trackList.isEmpty()) {
+            binder.getPlayback().reset();
+            callback.resolve(null);
+            return;
+        }
+
+        int startIndex = startId == null ? 0 : -1;
+
+        for(int i = 0; i < trackList.size() && startIndex == -1; i++) {
+            if(trackList.get(i).id.equals(startId)) startIndex = i;
+        }
+
+        if(startIndex == -1) {
+            callback.reject("track_not_in_queue", "Given track ID was not found in the new queue");
+        } else {
+            binder.getPlayback().setQueue(trackList, startIndex, Utils.toMillis(startPosition), callback);
+        }
     }
 
     @ReactMethod
     public void remove(ReadableArray tracks, final Promise callback) {
         final ArrayList trackList = Arguments.toList(tracks);
 
-        waitForConnection(() -> {
-            List<Track> queue = binder.getPlayback().getQueue();
-            List<Integer> indexes = new ArrayList<>();
+        waitForConnection(() -> removeTracks(trackList, callback));
+    }
 
-            for(Object o : trackList) {
-                String id = o.toString();
+    private void removeTracks(List trackList, Promise callback) {
+        TrackQueue queue = binder.getPlayback().getQueue();
+        List<Integer> indexes = new ArrayList<>();
 
-                for(int i = 0; i < queue.size(); i++) {
-                    if(queue.get(i).id.equals(id)) {
-                        indexes.add(i);
-                        break;
-                    }
-                }
-            }
+        for(Object o : trackList) {
+            int index = queue.indexOfId(o.toString());
+            if(index != -1) indexes.add(index);
+        }
 
-            if (!indexes.isEmpty()) {
-                binder.getPlayback().remove(indexes, callback);
-            } else {
-                callback.resolve(null);
-            }
-        });
+        if (!indexes.isEmpty()) {
+            binder.getPlayback().remove(indexes, callback);
+        } else {
+            callback.resolve(null);
+        }
+    }
+
+    @ReactMethod
+    public void move(final String id, final String insertBeforeId, final Promise callback) {
+        waitForConnection(() -> moveTrack(id, insertBeforeId, callback));
+    }
+
+    private void moveTrack(String id, String insertBeforeId, Promise callback) {
+        ExoPlayback playback = binder.getPlayback();
+        TrackQueue queue = playback.getQueue();
+        int fromIndex = queue.indexOfId(id);
+        int beforeIndex = insertBeforeId != null ? queue.indexOfId(insertBeforeId) : queue.size();
+
+        if(fromIndex == -1 || beforeIndex == -1) {
+            callback.reject("track_not_in_queue", "Given track ID was not found in queue");
+            return;
+        }
+
+        // The destination is relative to the queue without the moved track
+        int toIndex = beforeIndex > fromIndex ? beforeIndex - 1 : beforeIndex;
+
+        playback.move(fromIndex, toIndex, callback);
     }
 
     @ReactMethod
     public void updateMetadataForTrack(String id, ReadableMap map, final Promise callback) {
-        waitForConnection(() -> {
-            ExoPlayback playback = binder.getPlayback();
-            List<Track> queue = playback.getQueue();
-            Track track = null;
-            int index = -1;
+        final Bundle metadata = Arguments.toBundle(map);
 
-            for(int i = 0; i < queue.size(); i++) {
-                track = queue.get(i);
+        waitForConnection(() -> updateMetadata(id, metadata, callback));
+    }
 
-                if(track.id.equals(id)) {
-                    index = i;
-                    break;
-                }
-            }
+    private void updateMetadata(String id, Bundle metadata, Promise callback) {
+        ExoPlayback playback = binder.getPlayback();
+        TrackQueue queue = playback.getQueue();
+        int index = queue.indexOfId(id);
 
-            if(index == -1) {
-                callback.reject("track_not_in_queue", "No track found");
-            } else {
-                track.setMetadata(getReactApplicationContext(), Arguments.toBundle(map), binder.getRatingType());
-                playback.updateTrack(index, track);
-                callback.resolve(null);
-            }
-        });
+        if(index == -1) {
+            callback.reject("track_not_in_queue", "No track found");
+        } else {
+            // The queued track might be read from other threads, so the copy is updated instead
+            Track track = queue.get(index).copy();
+            int changes = track.setMetadata(getReactApplicationContext(), metadata, binder.getRatingType());
+            playback.updateTrack(index, track, changes);
+            callback.resolve(null);
+        }
+    }
+
+    @ReactMethod
+    public void updateMetadataForTracks(ReadableMap map, final Promise callback) {
+        final Bundle updates = Arguments.toBundle(map);
+
+        waitForConnection(() -> updateMetadata(updates, callback));
+    }
+
+    private void updateMetadata(Bundle updates, Promise callback) {
+        ExoPlayback playback = binder.getPlayback();
+        TrackQueue queue = playback.getQueue();
+        List<Integer> indexes = new ArrayList<>();
+        List<Track> tracks = new ArrayList<>();
+        List<Integer> changes = new ArrayList<>();
+
+        for(String id : updates.keySet()) {
+            Bundle metadata = updates.getBundle(id);
+            int index = queue.indexOfId(id);
+
+            // Tracks that are not in the queue are ignored
+            if(index == -1 || metadata == null) continue;
+
+            Track track = queue.get(index).copy();
+            indexes.add(index);
+            tracks.add(track);
+            changes.add(track.setMetadata(getReactApplicationContext(), metadata, binder.getRatingType()));
+        }
+
+        playback.updateTracks(indexes, tracks, changes);
+        callback.resolve(null);
     }
 
     @ReactMethod
     public void removeUpcomingTracks(final Promise callback) {
-        waitForConnection(() -> {
-            binder.getPlayback().removeUpcomingTracks();
-            callback.resolve(null);
-        });
+        waitForConnection(() -> binder.getPlayback().removeUpcomingTracks(callback));
     }
 
     @ReactMethod
@@ -370,28 +492,171 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
     }
 
     @ReactMethod
-    public void getTrack(final String id, final Promise callback) {
+    public void setShuffleMode(final boolean enabled, final double seed, final Promise callback) {
+        waitForConnection(() -> binder.getPlayback().setShuffleMode(enabled, (long)seed, callback));
+    }
+
+    @ReactMethod
+    public void getShuffleMode(final Promise callback) {
+        waitForConnection(() -> callback.resolve(binder.getPlayback().getShuffleMode()));
+    }
+
+    @ReactMethod
+    public void getShuffleOrder(final Promise callback) {
         waitForConnection(() -> {
-            List<Track> tracks = binder.getPlayback().getQueue();
+            int[] order = binder.getPlayback().getShuffleOrder();
 
-            for(Track track : tracks) {
-                if(track.id.equals(id)) {
-                    callback.resolve(Arguments.fromBundle(track.originalItem));
-                    return;
-                }
+            if(order == null) {
+                callback.resolve(null);
+                return;
             }
 
+            WritableArray array = Arguments.createArray();
+            for(int index : order) array.pushInt(index);
+            callback.resolve(array);
+        });
+    }
+
+    @ReactMethod
+    public void setRepeatMode(final int mode, final Promise callback) {
+        if(mode != Player.REPEAT_MODE_OFF && mode != Player.REPEAT_MODE_ONE && mode != Player.REPEAT_MODE_ALL) {
+            callback.reject("invalid_repeat_mode", "The repeat mode is invalid");
+            return;
+        }
+
+        waitForConnection(() -> {
+            binder.getPlayback().setRepeatMode(mode);
             callback.resolve(null);
         });
     }
 
+    @ReactMethod
+    public void getRepeatMode(final Promise callback) {
+        waitForConnection(() -> callback.resolve(binder.getPlayback().getRepeatMode()));
+    }
+
+    @ReactMethod
+    public void executeBatch(ReadableArray commands, final Promise callback) {
+        final List<Bundle> commandList = new ArrayList<>();
+
+        for(Object command : Arguments.toList(commands)) {
+            if(!(command instanceof Bundle)) {
+                callback.reject("invalid_operation", "Every operation must be an object");
+                return;
+            }
+
+            commandList.add((Bundle)command);
+        }
+
+        waitForConnection(() -> new CommandBatch(binder, commandList, this::executeCommand, callback).run());
+    }
+
+    /**
+     * Runs a batched operation. Needs to be called in the service thread.
+     */
+    private void executeCommand(String op, List args, Promise callback) {
+        ExoPlayback playback = binder.getPlayback();
+
+        switch(op == null ? "" : op) {
+            case "reset":
+                playback.reset();
+                callback.resolve(null);
+                break;
+            case "add":
+                addTracks((List)args.get(0), args.size() > 1 ? (String)args.get(1) : null, callback);
+                break;
+            case "remove":
+                Object ids = args.get(0);
+                removeTracks(ids instanceof List ? (List)ids : Collections.singletonList(ids), callback);
+                break;
+            case "setQueue":
+                replaceQueue((List)args.get(0), args.size() > 1 ? (String)args.get(1) : null,
+                        args.size() > 2 ? ((Number)args.get(2)).doubleValue() : 0, callback);
+                break;
+            case "move":
+                moveTrack((String)args.get(0), args.size() > 1 ? (String)args.get(1) : null, callback);
+                break;
+            case "removeUpcomingTracks":
+                playback.removeUpcomingTracks(callback);
+                break;
+            case "updateMetadataForTrack":
+                updateMetadata((String)args.get(0), (Bundle)args.get(1), callback);
+                break;
+            case "updateMetadataForTracks":
+                updateMetadata((Bundle)args.get(0), callback);
+                break;
+            case "skip":
+                playback.skip((String)args.get(0), callback);
+                break;
+            case "skipToNext":
+                playback.skipToNext(callback);
+                break;
+            case "skipToPrevious":
+                playback.skipToPrevious(callback);
+                break;
+            case "play":
+                playback.play();
+                callback.resolve(null);
+                break;
+            case "pause":
+                playback.pause();
+                callback.resolve(null);
+                break;
+            case "stop":
+                playback.stop();
+                callback.resolve(null);
+                break;
+            case "seekTo":
+                playback.seekTo(Utils.toMillis(((Number)args.get(0)).doubleValue()));
+                callback.resolve(null);
+                break;
+            case "setVolume":
+                playback.setVolume(((Number)args.get(0)).floatValue());
+                callback.resolve(null);
+                break;
+            case "setRate":
+                playback.setRate(((Number)args.get(0)).floatValue());
+                callback.resolve(null);
+                break;
+            case "setShuffleMode":
+                long seed = args.size() > 1 ? ((Number)args.get(1)).longValue() : System.currentTimeMillis();
+                playback.setShuffleMode((Boolean)args.get(0), seed, callback);
+                break;
+            case "setRepeatMode":
+                int mode = ((Number)args.get(0)).intValue();
+
+                if(mode != Player.REPEAT_MODE_OFF && mode != Player.REPEAT_MODE_ONE && mode != Player.REPEAT_MODE_ALL) {
+                    callback.reject("invalid_repeat_mode", "The repeat mode is invalid");
+                } else {
+                    playback.setRepeatMode(mode);
+                    callback.resolve(null);
+                }
+                break;
+            default:
+                callback.reject("invalid_operation", "Unknown operation: " + op);
+        }
+    }
+
+    @ReactMethod
+    public void getTrack(final String id, final Promise callback) {
+        MusicBinder binder = this.binder;
+        QueueSnapshot queue = binder != null ? binder.getQueueSnapshot() : null;
+
+        if(queue != null) {
+            // Reads the last published queue directly, skipping the service thread
+            callback.resolve(toTrackMap(queue, id));
+            return;
+        }
+
+        waitForConnection(() -> callback.resolve(toTrackMap(this.binder.getPlayback().getQueueSnapshot(), id)));
+    }
+
     @ReactMethod
     public void getQueue(Promise callback) {
         waitForConnection(() -> {
             List queue = new ArrayList();
-            List<Track> tracks = binder.getPlayback().getQueue();
 
-            for(Track track : tracks) {
+            for(Track track : binder.getPlayback().getQueueSnapshot()) {
                 queue.add(track.originalItem);
             }
 
@@ -399,6 +664,63 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
         });
     }
 
+    @ReactMethod
+    public void getQueuePage(final int offset, final int limit, final double knownVersion, final Promise callback) {
+        waitForConnection(() -> {
+            ExoPlayback<?> playback = binder.getPlayback();
+            QueueSnapshot snapshot = playback.getQueueSnapshot();
+            long version = snapshot.getVersion();
+
+            WritableMap page = Arguments.createMap();
+            page.putDouble("version", version);
+            page.putInt("offset", offset);
+            page.putInt("total", snapshot.size());
+
+            if(knownVersion == version) {
+                // The queue hasn't changed since the last fetch
+                page.putNull("tracks");
+                page.putNull("shuffleOrder");
+            } else {
+                // Tracks are listed in queue order, the same positions used by the queue change events
+                List queue = new ArrayList();
+                int from = Math.max(0, Math.min(offset, snapshot.size()));
+                int to = limit < 0 ? snapshot.size() : Math.min(snapshot.size(), from + limit);
+
+                for(int i = from; i < to; i++) {
+                    queue.add(snapshot.get(i).originalItem);
+                }
+
+                page.putArray("tracks", Arguments.fromList(queue));
+
+                // Only sent when it's known, otherwise an order change follows once it is
+                int[] order = playback.getShuffleOrder();
+
+                if(order != null) {
+                    WritableArray shuffleOrder = Arguments.createArray();
+                    for(int index : order) shuffleOrder.pushInt(index);
+                    page.putArray("shuffleOrder", shuffleOrder);
+                } else {
+                    page.putNull("shuffleOrder");
+                }
+            }
+
+            callback.resolve(page);
+        });
+    }
+
+    @ReactMethod
+    public void getQueueVersion(final Promise callback) {
+        MusicBinder binder = this.binder;
+        QueueSnapshot queue = binder != null ? binder.getQueueSnapshot() : null;
+
+        if(queue != null) {
+            callback.resolve((double)queue.getVersion());
+            return;
+        }
+
+        waitForConnection(() -> callback.resolve((double)this.binder.getPlayback().getQueueSnapshot().getVersion()));
+    }
+
     @ReactMethod
     public void getCurrentTrack(final Promise callback) {
         waitForConnection(() -> {
@@ -455,4 +777,108 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
     public void getState(final Promise callback) {
         waitForConnection(() -> callback.resolve(binder.getPlayback().getState()));
     }
+
+    @ReactMethod
+    public void getProgress(final Promise callback) {
+        MusicBinder binder = this.binder;
+        PlaybackSnapshot snapshot = binder != null ? binder.getSnapshot() : null;
+
+        if(snapshot != null) {
+            // Reads the last published state directly, skipping the service thread
+            callback.resolve(toProgressMap(snapshot));
+            return;
+        }
+
+        waitForConnection(() -> callback.resolve(toProgressMap(this.binder.getPlayback().getSnapshot())));
+    }
+
+    @ReactMethod
+    public void setBrowseTree(ReadableMap map, final Promise callback) {
+        Bundle tree = Arguments.toBundle(map);
+        Map<String, List<MediaItem>> children = new HashMap<>();
+
+        try {
+            for(String parentId : tree.keySet()) {
+                List<MediaItem> items = createBrowseItems(tree.get(parentId));
+
+                if(items == null) {
+                    callback.reject("invalid_browse_item", "Every browse item must be an object");
+                    return;
+                }
+
+                children.put(parentId, items);
+            }
+        } catch(Exception ex) {
+            callback.reject("invalid_browse_item", ex);
+            return;
+        }
+
+        BrowseCatalog.setTree(children);
+        callback.resolve(null);
+    }
+
+    @ReactMethod
+    public void setBrowseChildren(String parentId, ReadableArray array, double page, double pageSize, final Promise callback) {
+        List<MediaItem> items;
+
+        try {
+            items = createBrowseItems(Arguments.toList(array));
+        } catch(Exception ex) {
+            callback.reject("invalid_browse_item", ex);
+            return;
+        }
+
+        if(items == null) {
+            callback.reject("invalid_browse_item", "Every browse item must be an object");
+            return;
+        }
+
+        BrowseCatalog.setChildren(parentId, (int)page, (int)pageSize, items);
+        callback.resolve(null);
+    }
+
+    @ReactMethod
+    public void setBrowseAllowedPackages(ReadableArray packages, final Promise callback) {
+        List<String> list = null;
+
+        if(packages != null) {
+            list = new ArrayList<>();
+            for(int i = 0; i < packages.size(); i++) list.add(packages.getString(i));
+        }
+
+        BrowseCatalog.setAllowedPackages(list);
+        callback.resolve(null);
+    }
+
+    private List<MediaItem> createBrowseItems(Object list) {
+        if(!(list instanceof List)) return null;
+        return BrowseCatalog.createItems(getReactApplicationContext(), (List)list);
+    }
+
+    @ReactMethod
+    public void getDiagnostics(final Promise callback) {
+        callback.resolve(Arguments.fromBundle(Metrics.toBundle()));
+    }
+
+    @ReactMethod
+    public void resetDiagnostics(final Promise callback) {
+        Metrics.reset();
+        callback.resolve(null);
+    }
+
+    private WritableMap toTrackMap(QueueSnapshot queue, String id) {
+        int index = queue.indexOfId(id);
+        return index == -1 ? null : Arguments.fromBundle(queue.get(index).originalItem);
+    }
+
+    private WritableMap toProgressMap(PlaybackSnapshot snapshot) {
+        WritableMap map = Arguments.createMap();
+        map.putDouble("position", Utils.toSeconds(snapshot.getPosition()));
+        map.putDouble("bufferedPosition", Utils.toSeconds(snapshot.bufferedPosition));
+        map.putDouble("duration", Utils.toSeconds(snapshot.duration));
+        map.putDouble("rate", snapshot.rate);
+        map.putInt("state", snapshot.state);
+        map.putString("track", snapshot.trackId);
+        return map;
+    }
 }
@@ -0,0 +1,106 @@
+package com.guichaguri.trackplayer.service;
+
+import android.os.Bundle;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide performance counters, exposed to JS through {@code getDiagnostics}
+ *
+ * @author Guichaguri
+ */
+public class Metrics {
+
+    private static final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Timing> timings = new ConcurrentHashMap<>();
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long delta) {
+        getCounter(name).addAndGet(delta);
+    }
+
+    public static void set(String name, long value) {
+        getCounter(name).set(value);
+    }
+
+    public static long get(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Records a duration
+     * @param name The metric name
+     * @param millis The duration in milliseconds
+     */
+    public static void recordTime(String name, long millis) {
+        Timing timing = timings.get(name);
+
+        if(timing == null) {
+            timings.putIfAbsent(name, new Timing());
+            timing = timings.get(name);
+        }
+
+        timing.record(millis);
+    }
+
+    public static void reset() {
+        counters.clear();
+        timings.clear();
+    }
+
+    public static Bundle toBundle() {
+        Bundle bundle = new Bundle();
+
+        for(Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            bundle.putDouble(entry.getKey(), entry.getValue().get());
+        }
+
+        for(Map.Entry<String, Timing> entry : timings.entrySet()) {
+            bundle.putBundle(entry.getKey(), entry.getValue().toBundle());
+        }
+
+        return bundle;
+    }
+
+    private static AtomicLong getCounter(String name) {
+        AtomicLong counter = counters.get(name);
+
+        if(counter == null) {
+            counters.putIfAbsent(name, new AtomicLong());
+            counter = counters.get(name);
+        }
+
+        return counter;
+    }
+
+    private static class Timing {
+
+        private long count = 0;
+        private long total = 0;
+        private long max = 0;
+        private long last = 0;
+
+        synchronized void record(long millis) {
+            count++;
+            total += millis;
+            last = millis;
+            if(millis > max) max = millis;
+        }
+
+        synchronized Bundle toBundle() {
+            Bundle bundle = new Bundle();
+            bundle.putDouble("count", count);
+            bundle.putDouble("average", count == 0 ? 0 : (double)total / count);
+            bundle.putDouble("max", max);
+            bundle.putDouble("last", last);
+            return bundle;
+        }
+
+    }
+
+}
@@ -2,8 +2,13 @@ package com.guichaguri.trackplayer.service;
 
 import android.os.Binder;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.v4.media.RatingCompat;
 import com.facebook.react.bridge.Promise;
+import com.guichaguri.trackplayer.service.models.QueueSnapshot;
 import com.guichaguri.trackplayer.service.player.ExoPlayback;
+import com.guichaguri.trackplayer.service.player.PlaybackSnapshot;
 
 /**
  * @author Guichaguri
@@ -11,18 +16,45 @@ import com.guichaguri.trackplayer.service.player.ExoPlayback;
 public class MusicBinder extends Binder {
 
     private final MusicService service;
-    private final MusicManager manager;
 
-    public MusicBinder(MusicService service, MusicManager manager) {
+    public MusicBinder(MusicService service) {
         this.service = service;
-        this.manager = manager;
     }
 
+    /**
+     * Gets the current manager, which is recreated when the service is started again after being destroyed
+     */
+    private MusicManager getManager() {
+        return service.manager;
+    }
+
+    /**
+     * Runs a task in the player thread, unless the player has been destroyed
+     */
     public void post(Runnable r) {
-        service.handler.post(r);
+        final long posted = SystemClock.elapsedRealtime();
+        Handler handler = service.handler;
+        if(handler == null) return;
+
+        handler.post(() -> {
+            Metrics.recordTime("commandQueueDelay", SystemClock.elapsedRealtime() - posted);
+            if(getManager() != null) r.run();
+        });
     }
 
+    public void postDelayed(Runnable r, long delay) {
+        Handler handler = service.handler;
+        if(handler != null) handler.postDelayed(r, delay);
+    }
+
+    /**
+     * Gets the playback, creating it when there's none yet
+     * @return The playback or {@code null} once the player is destroyed
+     */
     public ExoPlayback getPlayback() {
+        MusicManager manager = getManager();
+        if(manager == null) return null;
+
         ExoPlayback playback = manager.getPlayback();
 
         // TODO remove?
@@ -34,19 +66,79 @@ public class MusicBinder extends Binder {
         return playback;
     }
 
+    /**
+     * Gets the last playback snapshot without creating a new player. Can be called from any thread.
+     * @return The snapshot or {@code null} if there is no player yet
+     */
+    public PlaybackSnapshot getSnapshot() {
+        MusicManager manager = getManager();
+        ExoPlayback playback = manager == null ? null : manager.getPlayback();
+        return playback == null ? null : playback.getSnapshot();
+    }
+
+    /**
+     * Gets the last queue snapshot without creating a new player. Can be called from any thread.
+     * @return The snapshot or {@code null} if there is no player yet
+     */
+    public QueueSnapshot getQueueSnapshot() {
+        MusicManager manager = getManager();
+        ExoPlayback playback = manager == null ? null : manager.getPlayback();
+        return playback == null ? null : playback.getQueueSnapshot();
+    }
+
     public void setupPlayer(Bundle bundle, Promise promise) {
-        manager.switchPlayback(manager.createLocalPlayback(bundle));
+        MusicManager manager = getManager();
+
+        if(manager == null) {
+            promise.reject("player_destroyed", "The player has been destroyed");
+            return;
+        }
+
+        // Reuses the player created ahead of time when it has the same options
+        if(!manager.takePrewarmedPlayback(bundle)) {
+            manager.switchPlayback(manager.createLocalPlayback(bundle));
+        }
+
         promise.resolve(null);
     }
 
+    public void prewarm(Bundle bundle) {
+        MusicManager manager = getManager();
+        if(manager != null) manager.prewarmPlayback(bundle);
+    }
+
     public void updateOptions(Bundle bundle) {
+        MusicManager manager = getManager();
+        if(manager == null) return;
+
         manager.setStopWithApp(bundle.getBoolean("stopWithApp", false));
         manager.setAlwaysPauseOnInterruption(bundle.getBoolean("alwaysPauseOnInterruption", false));
+        manager.setProgressUpdateInterval(Utils.toMillis(bundle.getDouble("progressUpdateEventInterval", 0)));
+        manager.setBufferingDebounceInterval(Utils.toMillis(bundle.getDouble("bufferingDebounceInterval", 0)));
         manager.getMetadata().updateOptions(bundle);
     }
 
+    /**
+     * Holds back the state events until the batch ends
+     * @param cancel Called in the service thread if the player is destroyed before the batch ends
+     * @return Whether the batch has started, which fails once the player is destroyed
+     */
+    public boolean beginBatch(Runnable cancel) {
+        MusicManager manager = getManager();
+        if(manager == null) return false;
+
+        manager.beginBatch(cancel);
+        return true;
+    }
+
+    public void endBatch(Runnable cancel) {
+        MusicManager manager = getManager();
+        if(manager != null) manager.endBatch(cancel);
+    }
+
     public int getRatingType() {
-        return manager.getMetadata().getRatingType();
+        MusicManager manager = getManager();
+        return manager == null ? RatingCompat.RATING_NONE : manager.getMetadata().getRatingType();
     }
 
     public void destroy() {
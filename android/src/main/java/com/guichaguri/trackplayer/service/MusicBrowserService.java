@@ -0,0 +1,128 @@
+package com.guichaguri.trackplayer.service;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Process;
+import android.support.v4.media.MediaBrowserCompat;
+import android.support.v4.media.MediaBrowserCompat.MediaItem;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.media.MediaBrowserServiceCompat;
+import com.guichaguri.trackplayer.service.metadata.BrowseCatalog;
+import java.util.List;
+
+/**
+ * Lists the {@link BrowseCatalog} to media browsers, such as Android Auto.
+ *
+ * The service shares the player session, so browsers control the same playback as the app.
+ * It has to be declared in the app manifest to be enabled. Callers can be restricted through the {@link BrowseCatalog}.
+ *
+ * @author Guichaguri
+ */
+public class MusicBrowserService extends MediaBrowserServiceCompat implements BrowseCatalog.Listener {
+
+    private static MediaSessionCompat session;
+    private static boolean sessionInUse = false;
+
+    // Only accessed in the main thread
+    private static MusicBrowserService instance;
+
+    /**
+     * Gets the session shared by the player and the browsers, creating it if needed. Can be called from any thread.
+     *
+     * The session lives as long as the process, as the token of a browser service can't be changed once it's set.
+     * That way, browsers keep controlling the player when it's destroyed and created again.
+     */
+    public static synchronized MediaSessionCompat acquireSession(Context context) {
+        sessionInUse = true;
+        return getSession(context);
+    }
+
+    /**
+     * Marks the session as no longer being used by the player. Can be called from any thread.
+     */
+    public static synchronized void releaseSession() {
+        sessionInUse = false;
+    }
+
+    private static synchronized MediaSessionCompat getSession(Context context) {
+        if(session == null) {
+            session = new MediaSessionCompat(context.getApplicationContext(), "TrackPlayer", null, null);
+        }
+        return session;
+    }
+
+    private static synchronized boolean isSessionInUse() {
+        return sessionInUse;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        instance = this;
+        BrowseCatalog.setListener(this);
+        setSessionToken(getSession(this).getSessionToken());
+
+        if(!isSessionInUse()) {
+            // Starts the player, so browsers can control it right away
+            try {
+                startService(new Intent(this, MusicService.class));
+            } catch(IllegalStateException ex) {
+                Log.w(Utils.LOG, "Could not start the player for the media browser", ex);
+            }
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        if(instance == this) {
+            instance = null;
+            BrowseCatalog.setListener(null);
+        }
+    }
+
+    @Nullable
+    @Override
+    public BrowserRoot onGetRoot(@NonNull String clientPackageName, int clientUid, @Nullable Bundle rootHints) {
+        // The app itself is always allowed
+        if(clientUid != Process.myUid() && !BrowseCatalog.isCallerAllowed(clientPackageName, clientUid)) {
+            Log.w(Utils.LOG, "Media browser " + clientPackageName + " is not allowed");
+            return null;
+        }
+
+        return new BrowserRoot(BrowseCatalog.ROOT_ID, null);
+    }
+
+    @Override
+    public void onLoadChildren(@NonNull String parentId, @NonNull Result<List<MediaItem>> result) {
+        onLoadChildren(parentId, result, Bundle.EMPTY);
+    }
+
+    @Override
+    public void onLoadChildren(@NonNull String parentId, @NonNull Result<List<MediaItem>> result, @NonNull Bundle options) {
+        int page = options.getInt(MediaBrowserCompat.EXTRA_PAGE, -1);
+        int pageSize = options.getInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, -1);
+
+        List<MediaItem> items = BrowseCatalog.getChildren(parentId, page, pageSize);
+
+        if(items != null) {
+            result.sendResult(items);
+            return;
+        }
+
+        result.detach();
+        BrowseCatalog.loadChildren(parentId, page, pageSize, result::sendResult);
+    }
+
+    @Override
+    public void onChildrenChanged(String parentId) {
+        notifyChildrenChanged(parentId);
+    }
+
+}
@@ -14,8 +14,11 @@ import android.net.wifi.WifiManager.WifiLock;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
+import android.support.v4.media.session.PlaybackStateCompat;
 import androidx.annotation.RequiresApi;
 import android.util.Log;
 import com.google.android.exoplayer2.C;
@@ -24,12 +27,17 @@ import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.ExoPlayerFactory;
 import com.google.android.exoplayer2.LoadControl;
 import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
 import com.guichaguri.trackplayer.module.MusicEvents;
 import com.guichaguri.trackplayer.service.metadata.MetadataManager;
 import com.guichaguri.trackplayer.service.models.Track;
 import com.guichaguri.trackplayer.service.player.ExoPlayback;
 import com.guichaguri.trackplayer.service.player.LocalPlayback;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static com.google.android.exoplayer2.DefaultLoadControl.*;
 
@@ -44,7 +52,11 @@ public class MusicManager implements OnAudioFocusChangeListener {
     private final WifiLock wifiLock;
 
     private MetadataManager metadata;
-    private ExoPlayback playback;
+    private volatile ExoPlayback playback;
+
+    private final long createdTime = SystemClock.elapsedRealtime();
+    private boolean playedOnce = false;
+    private long[] prewarmedConfig = null;
 
     @RequiresApi(26)
     private AudioFocusRequest focus = null;
@@ -54,13 +66,28 @@ public class MusicManager implements OnAudioFocusChangeListener {
     private BroadcastReceiver noisyReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            service.emit(MusicEvents.BUTTON_PAUSE, null);
+            // Handled as a pause press, so it's paused natively when the remote controls are
+            metadata.getButtonEvents().onPause();
         }
     };
     private boolean receivingNoisyEvents = false;
 
     private boolean stopWithApp = false;
     private boolean alwaysPauseOnInterruption = false;
+    private long progressUpdateInterval = 0;
+
+    private final List<Runnable> batches = new ArrayList<>();
+    private int batchDepth = 0;
+    private int batchState;
+    private boolean batchStatePending = false;
+    private int lastEmittedState = -1;
+
+    private long bufferingDebounceInterval = 0;
+    private boolean bufferingPending = false;
+    private final Runnable bufferingEmitter = () -> {
+        bufferingPending = false;
+        emitState(PlaybackStateCompat.STATE_BUFFERING);
+    };
 
     @SuppressLint("InvalidWakeLockTag")
     public MusicManager(MusicService service) {
@@ -93,6 +120,20 @@ public class MusicManager implements OnAudioFocusChangeListener {
         this.alwaysPauseOnInterruption = alwaysPauseOnInterruption;
     }
 
+    public long getProgressUpdateInterval() {
+        return progressUpdateInterval;
+    }
+
+    public void setProgressUpdateInterval(long progressUpdateInterval) {
+        this.progressUpdateInterval = progressUpdateInterval;
+
+        if(playback != null) playback.updateProgressTimer();
+    }
+
+    public void setBufferingDebounceInterval(long bufferingDebounceInterval) {
+        this.bufferingDebounceInterval = bufferingDebounceInterval;
+    }
+
     public MetadataManager getMetadata() {
         return metadata;
     }
@@ -110,16 +151,63 @@ public class MusicManager implements OnAudioFocusChangeListener {
         this.playback = playback;
 
         if(this.playback != null) {
+            long start = SystemClock.elapsedRealtime();
             this.playback.initialize();
+            Metrics.recordTime("playerInit", SystemClock.elapsedRealtime() - start);
         }
     }
 
+    /**
+     * Creates the player ahead of time, so the first {@code setupPlayer} call doesn't have to wait for it
+     * @param options The player options it's expected to be set up with
+     */
+    public void prewarmPlayback(Bundle options) {
+        if(playback != null) return;
+
+        switchPlayback(createLocalPlayback(options));
+        prewarmedConfig = getPlayerConfig(options);
+    }
+
+    /**
+     * Takes the player created ahead of time, which can only be reused once and before anything is added to it
+     * @param options The player options
+     * @return Whether the current player was created ahead of time with the same options
+     */
+    public boolean takePrewarmedPlayback(Bundle options) {
+        long[] config = prewarmedConfig;
+        prewarmedConfig = null;
+
+        if(config == null) return false;
+
+        boolean reused = playback != null && playback.getQueue().isEmpty()
+                && Arrays.equals(config, getPlayerConfig(options));
+
+        Metrics.increment(reused ? "prewarmReused" : "prewarmDiscarded");
+        return reused;
+    }
+
+    /**
+     * Reads the player options that are used to create the player
+     * @return The buffer durations in milliseconds and the cache size in bytes
+     */
+    private static long[] getPlayerConfig(Bundle options) {
+        return new long[] {
+                Utils.toMillis(options.getDouble("minBuffer", Utils.toSeconds(DEFAULT_MIN_BUFFER_MS))),
+                Utils.toMillis(options.getDouble("maxBuffer", Utils.toSeconds(DEFAULT_MAX_BUFFER_MS))),
+                Utils.toMillis(options.getDouble("playBuffer", Utils.toSeconds(DEFAULT_BUFFER_FOR_PLAYBACK_MS))),
+                Utils.toMillis(options.getDouble("backBuffer", Utils.toSeconds(DEFAULT_BACK_BUFFER_DURATION_MS))),
+                (long)(options.getDouble("maxCacheSize", 0) * 1024)
+        };
+    }
+
     public LocalPlayback createLocalPlayback(Bundle options) {
-        int minBuffer = (int)Utils.toMillis(options.getDouble("minBuffer", Utils.toSeconds(DEFAULT_MIN_BUFFER_MS)));
-        int maxBuffer = (int)Utils.toMillis(options.getDouble("maxBuffer", Utils.toSeconds(DEFAULT_MAX_BUFFER_MS)));
-        int playBuffer = (int)Utils.toMillis(options.getDouble("playBuffer", Utils.toSeconds(DEFAULT_BUFFER_FOR_PLAYBACK_MS)));
-        int backBuffer = (int)Utils.toMillis(options.getDouble("backBuffer", Utils.toSeconds(DEFAULT_BACK_BUFFER_DURATION_MS)));
-        long cacheMaxSize = (long)(options.getDouble("maxCacheSize", 0) * 1024);
+        long start = SystemClock.elapsedRealtime();
+        long[] config = getPlayerConfig(options);
+        int minBuffer = (int)config[0];
+        int maxBuffer = (int)config[1];
+        int playBuffer = (int)config[2];
+        int backBuffer = (int)config[3];
+        long cacheMaxSize = config[4];
         int multiplier = DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS / DEFAULT_BUFFER_FOR_PLAYBACK_MS;
 
         LoadControl control = new DefaultLoadControl.Builder()
@@ -127,11 +215,14 @@ public class MusicManager implements OnAudioFocusChangeListener {
                 .setBackBuffer(backBuffer, false)
                 .createDefaultLoadControl();
 
-        SimpleExoPlayer player = ExoPlayerFactory.newSimpleInstance(service, new DefaultRenderersFactory(service), new DefaultTrackSelector(), control);
+        // The player is bound to the service thread, where all commands and listeners run
+        SimpleExoPlayer player = ExoPlayerFactory.newSimpleInstance(service, new DefaultRenderersFactory(service),
+                new DefaultTrackSelector(), control, (DrmSessionManager<FrameworkMediaCrypto>)null, getHandler().getLooper());
 
         player.setAudioAttributes(new com.google.android.exoplayer2.audio.AudioAttributes.Builder()
                 .setContentType(C.CONTENT_TYPE_MUSIC).setUsage(C.USAGE_MEDIA).build());
 
+        Metrics.recordTime("playerCreate", SystemClock.elapsedRealtime() - start);
         return new LocalPlayback(service, this, player, cacheMaxSize);
     }
 
@@ -147,7 +238,7 @@ public class MusicManager implements OnAudioFocusChangeListener {
             requestFocus();
 
             if(!receivingNoisyEvents) {
-                service.registerReceiver(noisyReceiver, new IntentFilter(AudioManager.ACTION_AUDIO_BECOMING_NOISY));
+                service.registerReceiver(noisyReceiver, new IntentFilter(AudioManager.ACTION_AUDIO_BECOMING_NOISY), null, getHandler());
                 receivingNoisyEvents = true;
             }
 
@@ -159,6 +250,12 @@ public class MusicManager implements OnAudioFocusChangeListener {
         }
 
         metadata.setActive(true);
+
+        if(!playedOnce) {
+            // The time from the service start until the first audio
+            Metrics.recordTime("startupFirstPlay", SystemClock.elapsedRealtime() - createdTime);
+            playedOnce = true;
+        }
     }
 
     public void onPause() {
@@ -189,19 +286,93 @@ public class MusicManager implements OnAudioFocusChangeListener {
         metadata.setActive(false);
     }
 
+    /**
+     * Holds back the state events until {@link #endBatch} is called
+     * @param cancel Called if the manager is destroyed before the batch ends
+     */
+    public void beginBatch(Runnable cancel) {
+        batches.add(cancel);
+        batchDepth++;
+    }
+
+    /**
+     * Emits the latest state held back during the batch, if it differs from the last one emitted
+     */
+    public void endBatch(Runnable cancel) {
+        if(!batches.remove(cancel) || --batchDepth > 0) return;
+
+        if(batchStatePending) {
+            batchStatePending = false;
+            deliverState(batchState);
+        }
+    }
+
     public void onStateChange(int state) {
         Log.d(Utils.LOG, "onStateChange");
 
+        if(batchDepth > 0) {
+            batchState = state;
+            batchStatePending = true;
+            return;
+        }
+
+        deliverState(state);
+    }
+
+    /**
+     * Emits a state, holding back the transitions from playing to buffering
+     * until they last longer than the debounce interval
+     */
+    private void deliverState(int state) {
+        if(bufferingPending) {
+            Handler handler = getHandler();
+            if(handler != null) handler.removeCallbacks(bufferingEmitter);
+            bufferingPending = false;
+        }
+
+        if(state == lastEmittedState) {
+            // Nothing changed for JS, such as when the player went back to playing before the buffering state
+            // was emitted, but the session position has to be updated so it doesn't run ahead of the stall
+            metadata.updatePlayback(playback);
+            return;
+        }
+
+        Handler handler = getHandler();
+
+        if(bufferingDebounceInterval > 0 && handler != null && state == PlaybackStateCompat.STATE_BUFFERING
+                && lastEmittedState == PlaybackStateCompat.STATE_PLAYING) {
+            bufferingPending = true;
+            handler.postDelayed(bufferingEmitter, bufferingDebounceInterval);
+            return;
+        }
+
+        emitState(state);
+    }
+
+    private void emitState(int state) {
         Bundle bundle = new Bundle();
         bundle.putInt("state", state);
         service.emit(MusicEvents.PLAYBACK_STATE, bundle);
         metadata.updatePlayback(playback);
+
+        lastEmittedState = state;
+    }
+
+    public void onProgressUpdate(Track track, long position, long bufferedPosition, long duration, int state) {
+        Bundle bundle = new Bundle();
+        bundle.putString("track", track != null ? track.id : null);
+        bundle.putDouble("position", Utils.toSeconds(position));
+        bundle.putDouble("bufferedPosition", Utils.toSeconds(bufferedPosition));
+        bundle.putDouble("duration", Utils.toSeconds(duration));
+        bundle.putInt("state", state);
+        service.emit(MusicEvents.PLAYBACK_PROGRESS, bundle);
     }
 
     public void onTrackUpdate(Track previous, long prevPos, Track next) {
         Log.d(Utils.LOG, "onTrackUpdate");
 
-        if(next != null) metadata.updateMetadata(next);
+        // A repeated track loops back to itself, its metadata is already published
+        if(next != null && next != previous) metadata.updateMetadata(next);
 
         Bundle bundle = new Bundle();
         bundle.putString("track", previous != null ? previous.id : null);
@@ -210,6 +381,10 @@ public class MusicManager implements OnAudioFocusChangeListener {
         service.emit(MusicEvents.PLAYBACK_TRACK_CHANGED, bundle);
     }
 
+    public void onQueueChanged(Bundle data) {
+        service.emit(MusicEvents.PLAYBACK_QUEUE_CHANGED, data);
+    }
+
     public void onReset() {
         metadata.removeNotifications();
     }
@@ -249,6 +424,14 @@ public class MusicManager implements OnAudioFocusChangeListener {
 
     @Override
     public void onAudioFocusChange(int focus) {
+        Handler handler = getHandler();
+
+        // Focus changes from the legacy API are delivered in the main thread
+        if(handler != null && Looper.myLooper() != handler.getLooper()) {
+            handler.post(() -> onAudioFocusChange(focus));
+            return;
+        }
+
         Log.d(Utils.LOG, "onDuck");
 
         boolean permanent = false;
@@ -297,7 +480,7 @@ public class MusicManager implements OnAudioFocusChangeListener {
             r = AudioManager.AUDIOFOCUS_REQUEST_FAILED;
         } else if(Build.VERSION.SDK_INT >= 26) {
             focus = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN)
-                    .setOnAudioFocusChangeListener(this)
+                    .setOnAudioFocusChangeListener(this, getHandler())
                     .setAudioAttributes(new AudioAttributes.Builder()
                             .setUsage(AudioAttributes.USAGE_MEDIA)
                             .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
@@ -336,6 +519,16 @@ public class MusicManager implements OnAudioFocusChangeListener {
     public void destroy() {
         Log.d(Utils.LOG, "Releasing service resources...");
 
+        Handler handler = getHandler();
+        if(handler != null) handler.removeCallbacks(bufferingEmitter);
+
+        // Ends the batches that are still running, as their operations won't settle anymore
+        List<Runnable> cancelled = new ArrayList<>(batches);
+        batches.clear();
+        batchDepth = 0;
+        batchStatePending = false;
+        for(Runnable cancel : cancelled) cancel.run();
+
         // Disable audio focus
         abandonFocus();
 
@@ -5,9 +5,11 @@ import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Process;
+import android.os.SystemClock;
 import androidx.core.app.NotificationCompat;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.media.session.MediaButtonReceiver;
 
 import com.facebook.react.HeadlessJsTaskService;
@@ -15,6 +17,7 @@ import com.facebook.react.ReactInstanceManager;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.jstasks.HeadlessJsTaskConfig;
+import com.guichaguri.trackplayer.module.MusicEvents;
 import javax.annotation.Nullable;
 
 /**
@@ -22,8 +25,9 @@ import javax.annotation.Nullable;
  */
 public class MusicService extends HeadlessJsTaskService {
 
-    MusicManager manager;
-    Handler handler;
+    volatile MusicManager manager;
+    HandlerThread thread;
+    volatile Handler handler;
 
     @Nullable
     @Override
@@ -36,24 +40,46 @@ public class MusicService extends HeadlessJsTaskService {
         // Overridden to prevent the service from being terminated
     }
 
-    public void emit(String event, Bundle data) {
-        Intent intent = new Intent(Utils.EVENT_INTENT);
+    /**
+     * Creates the player thread and the manager, unless they're already running
+     * @return Whether they had to be created
+     */
+    private boolean init() {
+        if(manager != null) return false;
+
+        if(thread == null) {
+            thread = new HandlerThread("TrackPlayer", Process.THREAD_PRIORITY_AUDIO);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
 
-        intent.putExtra("event", event);
-        if(data != null) intent.putExtra("data", data);
+        manager = new MusicManager(this);
+        return true;
+    }
 
-        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
+    public void emit(String event, Bundle data) {
+        MusicEvents.dispatch(event, data);
     }
 
     public void destroy() {
+        final MusicManager manager = this.manager;
+        final HandlerThread thread = this.thread;
+
+        this.manager = null;
+        this.thread = null;
+
         if(handler != null) {
-            handler.removeMessages(0);
-            handler = null;
-        }
+            handler.removeCallbacksAndMessages(null);
 
-        if(manager != null) {
+            // The player has to be released in its own thread, the thread is stopped right after
+            handler.post(() -> {
+                if(manager != null) manager.destroy();
+                thread.quit();
+            });
+
+            handler = null;
+        } else if(manager != null) {
             manager.destroy();
-            manager = null;
         }
     }
 
@@ -89,7 +115,8 @@ public class MusicService extends HeadlessJsTaskService {
     @Override
     public IBinder onBind(Intent intent) {
         if(Utils.CONNECT_INTENT.equals(intent.getAction())) {
-            return new MusicBinder(this, manager);
+            init();
+            return new MusicBinder(this);
         }
 
         return super.onBind(intent);
@@ -108,10 +135,13 @@ public class MusicService extends HeadlessJsTaskService {
             return START_NOT_STICKY;
         }
 
-        manager = new MusicManager(this);
-        handler = new Handler();
+        // Reuses the running manager, so starting the service again keeps the session and the player
+        long start = SystemClock.elapsedRealtime();
+        boolean cold = init();
+        Metrics.recordTime(cold ? "serviceColdStart" : "serviceWarmStart", SystemClock.elapsedRealtime() - start);
 
-        super.onStartCommand(intent, flags, startId);
+        // The headless task is only started along with the manager, it's still running otherwise
+        if(cold) super.onStartCommand(intent, flags, startId);
         return START_STICKY;
     }
 
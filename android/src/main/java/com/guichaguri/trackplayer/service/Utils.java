@@ -16,7 +16,6 @@ import com.google.android.exoplayer2.upstream.RawResourceDataSource;
  */
 public class Utils {
 
-    public static final String EVENT_INTENT = "com.guichaguri.trackplayer.event";
     public static final String CONNECT_INTENT = "com.guichaguri.trackplayer.connect";
     public static final String NOTIFICATION_CHANNEL = "com.guichaguri.trackplayer";
     public static final String LOG = "RNTrackPlayer";
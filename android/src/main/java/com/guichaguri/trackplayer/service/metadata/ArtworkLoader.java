@@ -0,0 +1,236 @@
+package com.guichaguri.trackplayer.service.metadata;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.LruCache;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.transition.Transition;
+import com.guichaguri.trackplayer.service.Metrics;
+import com.guichaguri.trackplayer.service.MusicManager;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the track artwork decoded to the size it's displayed in: the lock screen artwork
+ * and the notification large icon. Decoded artwork is kept in its own memory cache, while
+ * Glide keeps the resized images in its disk cache.
+ *
+ * Bitmaps delivered by Glide are never released back to it, as they're shared with the cache.
+ *
+ * @author Guichaguri
+ */
+public class ArtworkLoader {
+
+    /**
+     * The size used by the system to scale down the session artwork
+     */
+    private static final int ARTWORK_SIZE_DP = 320;
+
+    public interface Callback {
+        void onArtworkLoaded(Artwork artwork);
+    }
+
+    public static class Artwork {
+
+        public final Bitmap art;
+        public final Bitmap icon;
+
+        Artwork(Bitmap art, Bitmap icon) {
+            this.art = art;
+            this.icon = icon;
+        }
+
+        int getByteCount() {
+            return art == icon ? art.getByteCount() : art.getByteCount() + icon.getByteCount();
+        }
+
+    }
+
+    private final Context context;
+    private final MusicManager manager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Artwork> cache;
+    private final int artSize, iconWidth, iconHeight;
+
+    // Only accessed in the main thread
+    private SimpleTarget<Bitmap> target;
+    private final Map<String, SimpleTarget<Bitmap>> prefetchTargets = new HashMap<>();
+
+    public ArtworkLoader(Context context, MusicManager manager) {
+        this.context = context.getApplicationContext();
+        this.manager = manager;
+
+        Resources res = context.getResources();
+        artSize = (int)(ARTWORK_SIZE_DP * res.getDisplayMetrics().density);
+        iconWidth = res.getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+        iconHeight = res.getDimensionPixelSize(android.R.dimen.notification_large_icon_height);
+
+        // Uses up to 1/16 of the heap, capped at 16MB
+        int maxBytes = (int)Math.min(Runtime.getRuntime().maxMemory() / 16, 16 * 1024 * 1024);
+
+        cache = new LruCache<String, Artwork>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Artwork artwork) {
+                return artwork.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Gets an artwork from the memory cache. Can be called from any thread.
+     * @param uri The artwork uri
+     * @return The artwork or {@code null} if it's not loaded yet
+     */
+    public Artwork getCached(Uri uri) {
+        Artwork cached = cache.get(getKey(uri));
+        if(cached != null) Metrics.increment("artworkCacheHits");
+        return cached;
+    }
+
+    /**
+     * Loads an artwork. The callback is called in the service thread.
+     * @param uri The artwork uri
+     * @param callback The callback, which will not be called if the request is cancelled or fails
+     */
+    public void load(Uri uri, Callback callback) {
+        final String key = getKey(uri);
+        Artwork cached = cache.get(key);
+
+        if(cached != null) {
+            Metrics.increment("artworkCacheHits");
+            deliver(cached, callback);
+            return;
+        }
+
+        mainHandler.post(() -> {
+            // Glide requests have to be started in the main thread
+            if(target != null) Glide.with(context).clear(target);
+
+            target = request(uri, key, callback);
+        });
+    }
+
+    /**
+     * Loads artwork into the memory cache ahead of time.
+     * Requests from the last call that are not in the list anymore are cancelled.
+     * @param uris The artwork uris
+     */
+    public void prefetch(List<Uri> uris) {
+        mainHandler.post(() -> {
+            Map<String, SimpleTarget<Bitmap>> targets = new HashMap<>();
+
+            for(Uri uri : uris) {
+                String key = getKey(uri);
+                SimpleTarget<Bitmap> pending = prefetchTargets.remove(key);
+
+                if(pending != null) {
+                    // Still wanted, keeps the request running
+                    targets.put(key, pending);
+                } else if(cache.get(key) == null && !targets.containsKey(key)) {
+                    targets.put(key, request(uri, key, null));
+                    Metrics.increment("artworkPrefetches");
+                }
+            }
+
+            clearPrefetchTargets();
+            prefetchTargets.putAll(targets);
+        });
+    }
+
+    /**
+     * Cancels the pending request
+     */
+    public void cancel() {
+        mainHandler.post(() -> {
+            if(target != null) Glide.with(context).clear(target);
+            target = null;
+        });
+    }
+
+    /**
+     * Cancels the pending prefetch requests
+     */
+    public void cancelPrefetch() {
+        mainHandler.post(this::clearPrefetchTargets);
+    }
+
+    public void destroy() {
+        cancel();
+        cancelPrefetch();
+        cache.evictAll();
+        Metrics.set("artworkBytes", 0);
+    }
+
+    /**
+     * Starts a Glide request, which has to be done in the main thread
+     */
+    private SimpleTarget<Bitmap> request(Uri uri, String key, Callback callback) {
+        final long start = SystemClock.elapsedRealtime();
+
+        return Glide.with(context)
+                .asBitmap()
+                .load(uri)
+                .apply(new RequestOptions()
+                        .override(artSize, artSize)
+                        .centerInside()
+                        .format(DecodeFormat.PREFER_RGB_565)
+                        .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+                        .skipMemoryCache(true))
+                .into(new SimpleTarget<Bitmap>() {
+                    @Override
+                    public void onResourceReady(Bitmap resource, Transition<? super Bitmap> transition) {
+                        // Not cleared from now on, so Glide won't recycle the bitmap
+                        if(target == this) target = null;
+                        if(prefetchTargets.get(key) == this) prefetchTargets.remove(key);
+
+                        Artwork artwork = new Artwork(resource, createIcon(resource));
+                        cache.put(key, artwork);
+
+                        Metrics.recordTime("artworkDecode", SystemClock.elapsedRealtime() - start);
+                        Metrics.set("artworkBytes", cache.size());
+
+                        if(callback != null) deliver(artwork, callback);
+                    }
+                });
+    }
+
+    private void clearPrefetchTargets() {
+        for(SimpleTarget<Bitmap> pending : prefetchTargets.values()) {
+            Glide.with(context).clear(pending);
+        }
+
+        prefetchTargets.clear();
+    }
+
+    private String getKey(Uri uri) {
+        return uri.toString() + "@" + artSize;
+    }
+
+    /**
+     * Scales the artwork down to the notification large icon size
+     */
+    private Bitmap createIcon(Bitmap art) {
+        float scale = Math.min((float)iconWidth / art.getWidth(), (float)iconHeight / art.getHeight());
+        if(scale >= 1) return art;
+
+        int width = Math.max(1, Math.round(art.getWidth() * scale));
+        int height = Math.max(1, Math.round(art.getHeight() * scale));
+        return Bitmap.createScaledBitmap(art, width, height, true);
+    }
+
+    private void deliver(Artwork artwork, Callback callback) {
+        Handler handler = manager.getHandler();
+        if(handler != null) handler.post(() -> callback.onArtworkLoaded(artwork));
+    }
+
+}
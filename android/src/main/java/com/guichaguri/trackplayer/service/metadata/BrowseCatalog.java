@@ -0,0 +1,321 @@
+package com.guichaguri.trackplayer.service.metadata;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.media.MediaBrowserCompat.MediaItem;
+import android.support.v4.media.MediaDescriptionCompat;
+import android.util.LruCache;
+import com.guichaguri.trackplayer.module.MusicEvents;
+import com.guichaguri.trackplayer.service.Metrics;
+import com.guichaguri.trackplayer.service.Utils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The content listed by media browsers, such as Android Auto.
+ *
+ * Children come either from a tree registered up front or from a provider, which fills
+ * pages asynchronously into a memory cache. Cached pages are served without waiting for JS.
+ *
+ * @author Guichaguri
+ */
+public class BrowseCatalog {
+
+    public static final String ROOT_ID = "root";
+
+    /**
+     * The maximum amount of provided items kept in memory
+     */
+    private static final int CACHE_SIZE = 2000;
+
+    /**
+     * How long a browser waits for a provider in milliseconds before getting an error
+     */
+    private static final long REQUEST_TIMEOUT = 10000;
+
+    public interface Provider {
+        /**
+         * Loads the children of an item, which have to be sent through {@link #setChildren} afterwards
+         * @param parentId The parent item id
+         * @param page The page or -1 for every child
+         * @param pageSize The page size or -1 for every child
+         */
+        void loadChildren(String parentId, int page, int pageSize);
+    }
+
+    public interface Callback {
+        /**
+         * Called in the main thread
+         * @param items The children or {@code null} if they couldn't be loaded
+         */
+        void onChildrenLoaded(List<MediaItem> items);
+    }
+
+    public interface Validator {
+        /**
+         * Called in the main thread when a media browser connects
+         * @param packageName The package of the browser
+         * @param uid The user id of the browser
+         * @return Whether it can list the catalog and control the player
+         */
+        boolean isAllowed(String packageName, int uid);
+    }
+
+    public interface Listener {
+        /**
+         * Called in the main thread when previously listed children have changed
+         */
+        void onChildrenChanged(String parentId);
+    }
+
+    /**
+     * The default provider, which asks JS for the children
+     */
+    private static final Provider JS_PROVIDER = (parentId, page, pageSize) -> {
+        Bundle bundle = new Bundle();
+        bundle.putString("parentId", parentId);
+
+        if(page >= 0) {
+            bundle.putInt("page", page);
+            bundle.putInt("pageSize", pageSize);
+        }
+
+        MusicEvents.dispatch(MusicEvents.BROWSE_CHILDREN_REQUEST, bundle);
+    };
+
+    private static class Request {
+        final List<Callback> callbacks = new ArrayList<>();
+        final long start = SystemClock.elapsedRealtime();
+    }
+
+    private static final Object lock = new Object();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private static final Map<String, List<MediaItem>> tree = new HashMap<>();
+    private static final Map<String, Request> requests = new HashMap<>();
+    private static final LruCache<String, List<MediaItem>> cache = new LruCache<String, List<MediaItem>>(CACHE_SIZE) {
+        @Override
+        protected int sizeOf(String key, List<MediaItem> items) {
+            return Math.max(1, items.size());
+        }
+    };
+
+    private static Provider provider = JS_PROVIDER;
+    private static volatile Listener listener;
+    private static volatile Validator validator;
+    private static volatile Set<String> allowedPackages;
+
+    /**
+     * Sets the provider used for the children that are not in the registered tree
+     * @param provider The provider or {@code null} to ask JS
+     */
+    public static void setProvider(Provider provider) {
+        synchronized(lock) {
+            BrowseCatalog.provider = provider == null ? JS_PROVIDER : provider;
+            cache.evictAll();
+        }
+    }
+
+    public static void setListener(Listener listener) {
+        BrowseCatalog.listener = listener;
+    }
+
+    /**
+     * Sets a validator for the media browsers, which is asked after the allowed packages
+     * @param validator The validator or {@code null} to allow any browser in the allowed packages
+     */
+    public static void setValidator(Validator validator) {
+        BrowseCatalog.validator = validator;
+    }
+
+    /**
+     * Restricts the media browsers to a list of packages
+     * @param packages The packages or {@code null} to allow any package
+     */
+    public static void setAllowedPackages(Collection<String> packages) {
+        BrowseCatalog.allowedPackages = packages == null ? null : new HashSet<>(packages);
+    }
+
+    /**
+     * Checks whether a media browser can connect
+     * @param packageName The package of the browser
+     * @param uid The user id of the browser
+     */
+    public static boolean isCallerAllowed(String packageName, int uid) {
+        Set<String> packages = allowedPackages;
+        if(packages != null && !packages.contains(packageName)) return false;
+
+        Validator validator = BrowseCatalog.validator;
+        return validator == null || validator.isAllowed(packageName, uid);
+    }
+
+    /**
+     * Replaces the registered tree, clearing the provided children as well
+     * @param children The children of each item, by parent id
+     */
+    public static void setTree(Map<String, List<MediaItem>> children) {
+        Set<String> changed = new HashSet<>(children.keySet());
+
+        synchronized(lock) {
+            changed.addAll(tree.keySet());
+            tree.clear();
+            tree.putAll(children);
+            cache.evictAll();
+        }
+
+        for(String parentId : changed) notifyChanged(parentId);
+    }
+
+    /**
+     * Gets the children that are available without loading
+     * @param parentId The parent item id
+     * @param page The page or -1 for every child
+     * @param pageSize The page size or -1 for every child
+     * @return The children or {@code null} if they have to be loaded
+     */
+    public static List<MediaItem> getChildren(String parentId, int page, int pageSize) {
+        List<MediaItem> items;
+
+        synchronized(lock) {
+            items = tree.get(parentId);
+
+            if(items != null) {
+                items = getPage(items, page, pageSize);
+            } else if((items = cache.get(getKey(parentId, page, pageSize))) == null && page >= 0) {
+                // The page might be inside the full list
+                List<MediaItem> all = cache.get(getKey(parentId, -1, -1));
+                if(all != null) items = getPage(all, page, pageSize);
+            }
+        }
+
+        Metrics.increment(items != null ? "browseCacheHits" : "browseCacheMisses");
+        return items;
+    }
+
+    /**
+     * Loads children through the provider. Concurrent requests for the same page share the same load.
+     * @param parentId The parent item id
+     * @param page The page or -1 for every child
+     * @param pageSize The page size or -1 for every child
+     * @param callback The callback
+     */
+    public static void loadChildren(String parentId, int page, int pageSize, Callback callback) {
+        final String key = getKey(parentId, page, pageSize);
+        final Request request;
+        Provider provider;
+
+        synchronized(lock) {
+            Request pending = requests.get(key);
+
+            if(pending != null) {
+                pending.callbacks.add(callback);
+                return;
+            }
+
+            request = new Request();
+            request.callbacks.add(callback);
+            requests.put(key, request);
+            provider = BrowseCatalog.provider;
+        }
+
+        mainHandler.postDelayed(() -> {
+            synchronized(lock) {
+                if(requests.get(key) != request) return;
+                requests.remove(key);
+            }
+
+            deliver(request.callbacks, null);
+        }, REQUEST_TIMEOUT);
+
+        provider.loadChildren(parentId, page, pageSize);
+    }
+
+    /**
+     * Stores loaded children in the cache, answering the browsers waiting for them
+     * @param parentId The parent item id
+     * @param page The page or -1 for every child
+     * @param pageSize The page size or -1 for every child
+     * @param items The children
+     */
+    public static void setChildren(String parentId, int page, int pageSize, List<MediaItem> items) {
+        String key = getKey(parentId, page, pageSize);
+        Request request;
+
+        synchronized(lock) {
+            cache.put(key, items);
+            request = requests.remove(key);
+        }
+
+        if(request != null) {
+            Metrics.recordTime("browseLoad", SystemClock.elapsedRealtime() - request.start);
+            deliver(request.callbacks, items);
+        } else {
+            // Pushed without a request, so browsers might be showing stale children
+            notifyChanged(parentId);
+        }
+    }
+
+    /**
+     * Creates browsable or playable items
+     * @param context The context
+     * @param objects The item bundles
+     * @return The items or {@code null} if an object is not a bundle
+     */
+    public static List<MediaItem> createItems(Context context, List objects) {
+        List<MediaItem> items = new ArrayList<>();
+
+        for(Object o : objects) {
+            if(!(o instanceof Bundle)) return null;
+
+            Bundle bundle = (Bundle)o;
+            MediaDescriptionCompat description = new MediaDescriptionCompat.Builder()
+                    .setMediaId(bundle.getString("id"))
+                    .setTitle(bundle.getString("title"))
+                    .setSubtitle(bundle.getString("subtitle"))
+                    .setIconUri(Utils.getUri(context, bundle, "artwork"))
+                    .build();
+
+            int flags = 0;
+            if(bundle.getBoolean("browsable", false)) flags |= MediaItem.FLAG_BROWSABLE;
+            if(bundle.getBoolean("playable", !bundle.getBoolean("browsable", false))) flags |= MediaItem.FLAG_PLAYABLE;
+
+            items.add(new MediaItem(description, flags));
+        }
+
+        return items;
+    }
+
+    private static List<MediaItem> getPage(List<MediaItem> items, int page, int pageSize) {
+        if(page < 0 || pageSize <= 0) return items;
+
+        int from = Math.min(items.size(), page * pageSize);
+        int to = Math.min(items.size(), from + pageSize);
+        return new ArrayList<>(items.subList(from, to));
+    }
+
+    private static String getKey(String parentId, int page, int pageSize) {
+        return page < 0 || pageSize <= 0 ? parentId : parentId + "#" + page + "@" + pageSize;
+    }
+
+    private static void deliver(List<Callback> callbacks, List<MediaItem> items) {
+        mainHandler.post(() -> {
+            for(Callback callback : callbacks) callback.onChildrenLoaded(items);
+        });
+    }
+
+    private static void notifyChanged(String parentId) {
+        mainHandler.post(() -> {
+            Listener listener = BrowseCatalog.listener;
+            if(listener != null) listener.onChildrenChanged(parentId);
+        });
+    }
+
+}
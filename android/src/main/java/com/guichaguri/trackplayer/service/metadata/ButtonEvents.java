@@ -5,12 +5,14 @@ import android.os.Bundle;
 import android.provider.MediaStore;
 import android.support.v4.media.RatingCompat;
 import android.support.v4.media.session.MediaSessionCompat;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
 import com.guichaguri.trackplayer.module.MusicEvents;
 import com.guichaguri.trackplayer.service.MusicManager;
 import com.guichaguri.trackplayer.service.MusicService;
 import com.guichaguri.trackplayer.service.Utils;
-import com.guichaguri.trackplayer.service.models.Track;
-import java.util.List;
+import com.guichaguri.trackplayer.service.models.QueueSnapshot;
+import com.guichaguri.trackplayer.service.player.ExoPlayback;
 
 /**
  * @author Guichaguri
@@ -27,17 +29,38 @@ public class ButtonEvents extends MediaSessionCompat.Callback {
 
     @Override
     public void onPlay() {
-        service.emit(MusicEvents.BUTTON_PLAY, null);
+        ExoPlayback playback = getNativePlayback();
+
+        if(playback != null) {
+            playback.play();
+            emitHandled(MusicEvents.BUTTON_PLAY, null);
+        } else {
+            service.emit(MusicEvents.BUTTON_PLAY, null);
+        }
     }
 
     @Override
     public void onPause() {
-        service.emit(MusicEvents.BUTTON_PAUSE, null);
+        ExoPlayback playback = getNativePlayback();
+
+        if(playback != null) {
+            playback.pause();
+            emitHandled(MusicEvents.BUTTON_PAUSE, null);
+        } else {
+            service.emit(MusicEvents.BUTTON_PAUSE, null);
+        }
     }
 
     @Override
     public void onStop() {
-        service.emit(MusicEvents.BUTTON_STOP, null);
+        ExoPlayback playback = getNativePlayback();
+
+        if(playback != null) {
+            playback.stop();
+            emitHandled(MusicEvents.BUTTON_STOP, null);
+        } else {
+            service.emit(MusicEvents.BUTTON_STOP, null);
+        }
     }
 
 
@@ -88,47 +111,93 @@ public class ButtonEvents extends MediaSessionCompat.Callback {
 
     @Override
     public void onSkipToQueueItem(long id) {
-        List<Track> tracks = manager.getPlayback().getQueue();
+        QueueSnapshot queue = manager.getPlayback().getQueueSnapshot();
+        int index = queue.indexOfQueueId(id);
+        if(index == -1) return;
+
+        String trackId = queue.get(index).id;
+        Bundle bundle = new Bundle();
+        bundle.putString("id", trackId);
 
-        for(Track track : tracks) {
-            if(track.queueId != id) continue;
+        ExoPlayback playback = getNativePlayback();
 
-            Bundle bundle = new Bundle();
-            bundle.putString("id", track.id);
+        if(playback != null) {
+            playback.skip(trackId, createPromise(MusicEvents.BUTTON_SKIP, bundle));
+        } else {
             service.emit(MusicEvents.BUTTON_SKIP, bundle);
-            break;
         }
     }
 
     @Override
     public void onSkipToPrevious() {
-        service.emit(MusicEvents.BUTTON_SKIP_PREVIOUS, null);
+        ExoPlayback playback = getNativePlayback();
+
+        if(playback != null) {
+            playback.skipToPrevious(createPromise(MusicEvents.BUTTON_SKIP_PREVIOUS, null));
+        } else {
+            service.emit(MusicEvents.BUTTON_SKIP_PREVIOUS, null);
+        }
     }
 
     @Override
     public void onSkipToNext() {
-        service.emit(MusicEvents.BUTTON_SKIP_NEXT, null);
+        ExoPlayback playback = getNativePlayback();
+
+        if(playback != null) {
+            playback.skipToNext(createPromise(MusicEvents.BUTTON_SKIP_NEXT, null));
+        } else {
+            service.emit(MusicEvents.BUTTON_SKIP_NEXT, null);
+        }
     }
 
     @Override
     public void onRewind() {
+        int interval = manager.getMetadata().getJumpInterval();
         Bundle bundle = new Bundle();
-        bundle.putInt("interval", manager.getMetadata().getJumpInterval());
-        service.emit(MusicEvents.BUTTON_JUMP_BACKWARD, bundle);
+        bundle.putInt("interval", interval);
+
+        ExoPlayback playback = getNativePlayback();
+
+        if(playback != null) {
+            playback.seekTo(Math.max(0, playback.getPosition() - Utils.toMillis(interval)));
+            emitHandled(MusicEvents.BUTTON_JUMP_BACKWARD, bundle);
+        } else {
+            service.emit(MusicEvents.BUTTON_JUMP_BACKWARD, bundle);
+        }
     }
 
     @Override
     public void onFastForward() {
+        int interval = manager.getMetadata().getJumpInterval();
         Bundle bundle = new Bundle();
-        bundle.putInt("interval", manager.getMetadata().getJumpInterval());
-        service.emit(MusicEvents.BUTTON_JUMP_FORWARD, bundle);
+        bundle.putInt("interval", interval);
+
+        ExoPlayback playback = getNativePlayback();
+
+        if(playback != null) {
+            long position = playback.getPosition() + Utils.toMillis(interval);
+            long duration = playback.getDuration();
+
+            playback.seekTo(duration > 0 ? Math.min(position, duration) : position);
+            emitHandled(MusicEvents.BUTTON_JUMP_FORWARD, bundle);
+        } else {
+            service.emit(MusicEvents.BUTTON_JUMP_FORWARD, bundle);
+        }
     }
 
     @Override
     public void onSeekTo(long pos) {
         Bundle bundle = new Bundle();
         bundle.putDouble("position", Utils.toSeconds(pos));
-        service.emit(MusicEvents.BUTTON_SEEK_TO, bundle);
+
+        ExoPlayback playback = getNativePlayback();
+
+        if(playback != null) {
+            playback.seekTo(pos);
+            emitHandled(MusicEvents.BUTTON_SEEK_TO, bundle);
+        } else {
+            service.emit(MusicEvents.BUTTON_SEEK_TO, bundle);
+        }
     }
 
     @Override
@@ -137,4 +206,31 @@ public class ButtonEvents extends MediaSessionCompat.Callback {
         Utils.setRating(bundle, "rating", rating);
         service.emit(MusicEvents.BUTTON_SET_RATING, bundle);
     }
+
+    /**
+     * Gets the player when the remote controls are handled natively, without a round trip to JS
+     * @return The player or {@code null} if the remote events should be sent to JS
+     */
+    private ExoPlayback getNativePlayback() {
+        return manager.getMetadata().isNativeRemoteControls() ? manager.getPlayback() : null;
+    }
+
+    /**
+     * Informs JS of a remote control that was already handled
+     * @param event The remote event that would have been sent
+     * @param data The remote event data
+     */
+    private void emitHandled(String event, Bundle data) {
+        Bundle bundle = data != null ? new Bundle(data) : new Bundle();
+        bundle.putString("event", event);
+        service.emit(MusicEvents.BUTTON_HANDLED, bundle);
+    }
+
+    /**
+     * Creates a promise that informs JS once the remote control succeeds,
+     * or sends the remote event when it fails so the app can handle it
+     */
+    private Promise createPromise(String event, Bundle data) {
+        return new PromiseImpl((values) -> emitHandled(event, data), (values) -> service.emit(event, data));
+    }
 }
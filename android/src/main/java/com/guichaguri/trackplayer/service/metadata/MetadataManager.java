@@ -9,6 +9,9 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationCompat.Action;
 import android.support.v4.media.MediaMetadataCompat;
@@ -16,13 +19,12 @@ import android.support.v4.media.RatingCompat;
 import androidx.media.app.NotificationCompat.MediaStyle;
 import androidx.media.session.MediaButtonReceiver;
 import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.MediaSessionCompat.QueueItem;
 import android.support.v4.media.session.PlaybackStateCompat;
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.RequestManager;
-import com.bumptech.glide.request.target.SimpleTarget;
-import com.bumptech.glide.request.transition.Transition;
 import com.facebook.react.views.imagehelper.ResourceDrawableIdHelper;
 import com.guichaguri.trackplayer.R;
+import com.guichaguri.trackplayer.service.Metrics;
+import com.guichaguri.trackplayer.service.MusicBrowserService;
 import com.guichaguri.trackplayer.service.MusicManager;
 import com.guichaguri.trackplayer.service.MusicService;
 import com.guichaguri.trackplayer.service.Utils;
@@ -30,23 +32,58 @@ import com.guichaguri.trackplayer.service.models.Track;
 import com.guichaguri.trackplayer.service.player.ExoPlayback;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Guichaguri
  */
 public class MetadataManager {
 
+    /**
+     * The amount of tracks before and after the current one that are sent to the session queue
+     */
+    private static final int QUEUE_WINDOW_BEFORE = 50;
+    private static final int QUEUE_WINDOW_AFTER = 200;
+
+    /**
+     * The minimum interval between session queue updates, in milliseconds
+     */
+    private static final long QUEUE_UPDATE_INTERVAL = 500;
+
+    private static final AtomicInteger activeSessions = new AtomicInteger();
+
     private final MusicService service;
     private final MusicManager manager;
     private final MediaSessionCompat session;
 
     private int ratingType = RatingCompat.RATING_NONE;
     private int jumpInterval = 15;
+    private boolean nativeRemoteControls = false;
     private long actions = 0;
     private long compactActions = 0;
-    private SimpleTarget<Bitmap> artworkTarget;
+    private final ArtworkLoader artworkLoader;
+    private final ButtonEvents buttonEvents;
+    private int artworkRequest = 0;
+    private int artworkPrefetchCount = 2;
     private NotificationCompat.Builder builder;
 
+    private long notificationInterval = 250;
+    private long lastNotificationTime = 0;
+    private boolean notificationDirty = true;
+    private boolean notificationScheduled = false;
+    private boolean foreground = false;
+    private boolean actionsDirty = true;
+    private boolean notificationPlaying = false;
+    private final Runnable notificationPoster = this::postNotification;
+    private List<QueueItem> sessionQueue = null;
+    private long lastQueueTime = 0;
+    private boolean queueScheduled = false;
+    private final Runnable queuePoster = this::postQueue;
+    private String contentTitle, contentText, subText;
+    private Bitmap largeIcon;
+    private Track currentTrack;
+    private Bitmap currentArt;
+
     private Action previousAction, rewindAction, playAction, pauseAction, stopAction, forwardAction, nextAction;
 
     public MetadataManager(MusicService service, MusicManager manager) {
@@ -62,11 +99,18 @@ public class MetadataManager {
             not.createNotificationChannel(channel);
         }
 
+        this.artworkLoader = new ArtworkLoader(service, manager);
         this.builder = new NotificationCompat.Builder(service, Utils.NOTIFICATION_CHANNEL);
-        this.session = new MediaSessionCompat(service, "TrackPlayer", null, null);
+        // Media browsers control the same session, which is kept when the player is created again
+        this.session = MusicBrowserService.acquireSession(service);
 
         session.setFlags(MediaSessionCompat.FLAG_HANDLES_QUEUE_COMMANDS);
-        session.setCallback(new ButtonEvents(service, manager));
+        // The session callbacks run in the service thread, along with the player
+        this.buttonEvents = new ButtonEvents(service, manager);
+        session.setCallback(buttonEvents, manager.getHandler());
+
+        // Tracks how many sessions are alive, which should never be more than one
+        Metrics.set("activeSessions", activeSessions.incrementAndGet());
 
         Context context = service.getApplicationContext();
         String packageName = context.getPackageName();
@@ -95,6 +139,13 @@ public class MetadataManager {
         return session;
     }
 
+    /**
+     * Gets the handler of the media controls, which either acts on the player or sends the remote events to JS
+     */
+    public ButtonEvents getButtonEvents() {
+        return buttonEvents;
+    }
+
     /**
      * Updates the metadata options
      * @param options The options
@@ -137,6 +188,16 @@ public class MetadataManager {
             }
         }
 
+        // The actions will be rebuilt in the next playback update
+        actionsDirty = true;
+        notificationDirty = true;
+
+        // Update the amount of upcoming tracks that will have the artwork loaded ahead of time
+        artworkPrefetchCount = (int)options.getDouble("artworkPrefetchCount", 2);
+
+        // Update the minimum interval between notification updates
+        notificationInterval = Utils.toMillis(options.getDouble("notificationUpdateInterval", 0.25));
+
         // Update the color
         builder.setColor(options.getInt("color", NotificationCompat.COLOR_DEFAULT));
 
@@ -146,6 +207,9 @@ public class MetadataManager {
         // Update the jump interval
         jumpInterval = options.getInt("jumpInterval", 15);
 
+        // Update whether the remote controls are handled without waiting for JS
+        nativeRemoteControls = options.getBoolean("nativeRemoteControls", false);
+
         // Update the rating type
         ratingType = options.getInt("ratingType", RatingCompat.RATING_NONE);
         session.setRatingType(ratingType);
@@ -161,64 +225,172 @@ public class MetadataManager {
         return jumpInterval;
     }
 
+    public boolean isNativeRemoteControls() {
+        return nativeRemoteControls;
+    }
+
     public void removeNotifications() {
         String ns = Context.NOTIFICATION_SERVICE;
         Context context = service.getApplicationContext();
         NotificationManager manager = (NotificationManager) context.getSystemService(ns);
         manager.cancelAll();
+
+        notificationDirty = true;
     }
 
     /**
-     * Updates the artwork
-     * @param bitmap The new artwork
+     * Updates the current track
+     * @param track The new track
      */
-    protected void updateArtwork(Bitmap bitmap) {
-        Track track = manager.getPlayback().getCurrentTrack();
-        if(track == null) return;
+    public void updateMetadata(Track track) {
+        ArtworkLoader.Artwork cached = track.artwork != null ? artworkLoader.getCached(track.artwork) : null;
 
-        MediaMetadataCompat.Builder metadata = track.toMediaMetadata();
+        currentTrack = track;
 
-        metadata.putBitmap(MediaMetadataCompat.METADATA_KEY_ART, bitmap);
-        builder.setLargeIcon(bitmap);
+        if(cached != null) {
+            // The artwork was prefetched, so it's published along with the rest of the metadata
+            artworkRequest++;
+            artworkLoader.cancel();
 
-        session.setMetadata(metadata.build());
+            currentArt = cached.art;
+            setLargeIcon(cached.icon);
+        } else {
+            currentArt = null;
+            if(track.artwork == null) setLargeIcon(null);
+            loadArtwork(track.artwork);
+        }
+
+        setContent(track.title, track.artist, track.album);
+
+        publishMetadata();
         updateNotification();
     }
 
     /**
-     * Updates the current track
-     * @param track The new track
+     * Updates the metadata of the current track after it has changed
+     * @param track The track
+     * @param changes The changed fields, as returned by {@link Track#setMetadata}
      */
-    public void updateMetadata(Track track) {
-        MediaMetadataCompat.Builder metadata = track.toMediaMetadata();
-
-        RequestManager rm = Glide.with(service.getApplicationContext());
-        if(artworkTarget != null) rm.clear(artworkTarget);
-
-        if(track.artwork != null) {
-            artworkTarget = rm.asBitmap()
-                    .load(track.artwork)
-                    .into(new SimpleTarget<Bitmap>() {
-                        @Override
-                        public void onResourceReady(Bitmap resource, Transition<? super Bitmap> transition) {
-                            metadata.putBitmap(MediaMetadataCompat.METADATA_KEY_ART, resource);
-                            builder.setLargeIcon(resource);
-
-                            session.setMetadata(metadata.build());
-                            updateNotification();
-                            artworkTarget = null;
-                        }
-                    });
+    public void updateMetadata(Track track, int changes) {
+        // The track is replaced by an updated copy, with the same queue id
+        if(currentTrack == null || track.queueId != currentTrack.queueId || (changes & Track.CHANGED_ARTWORK) != 0) {
+            updateMetadata(track);
+            return;
         }
 
-        builder.setContentTitle(track.title);
-        builder.setContentText(track.artist);
-        builder.setSubText(track.album);
+        currentTrack = track;
 
-        session.setMetadata(metadata.build());
+        // Nothing that is shown has changed
+        if(changes == 0) return;
+
+        // Keeps the current artwork
+        setContent(track.title, track.artist, track.album);
+
+        publishMetadata();
         updateNotification();
     }
 
+    /**
+     * Loads the artwork and adds it to the session metadata and the notification
+     * @param artwork The artwork uri or {@code null} to cancel the last request
+     */
+    private void loadArtwork(Uri artwork) {
+        final int request = ++artworkRequest;
+
+        if(artwork == null) {
+            artworkLoader.cancel();
+            return;
+        }
+
+        artworkLoader.load(artwork, (loaded) -> {
+            // Ignores the artwork if the track has changed in the meantime
+            if(request != artworkRequest) return;
+
+            currentArt = loaded.art;
+            setLargeIcon(loaded.icon);
+
+            publishMetadata();
+            updateNotification();
+        });
+    }
+
+    /**
+     * Sends the current track metadata along with its artwork to the session
+     */
+    private void publishMetadata() {
+        MediaMetadataCompat.Builder metadata = currentTrack.toMediaMetadata();
+
+        if(currentArt != null) metadata.putBitmap(MediaMetadataCompat.METADATA_KEY_ART, currentArt);
+
+        session.setMetadata(metadata.build());
+    }
+
+    /**
+     * Loads the artwork of the tracks that are going to be played next
+     * @param playback The player
+     */
+    public void prefetchArtwork(ExoPlayback<?> playback) {
+        List<Uri> uris = new ArrayList<>();
+
+        if(artworkPrefetchCount > 0) {
+            for(Track track : playback.getUpcomingTracks(artworkPrefetchCount)) {
+                if(track.artwork != null) uris.add(track.artwork);
+            }
+        }
+
+        artworkLoader.prefetch(uris);
+    }
+
+    /**
+     * Cancels the artwork prefetching, as the upcoming tracks have changed
+     */
+    public void cancelArtworkPrefetch() {
+        artworkLoader.cancelPrefetch();
+    }
+
+    /**
+     * Updates the session queue, at most once per queue update interval.
+     * Changes made while an update is waiting are included in it.
+     */
+    public void updateQueue() {
+        if(queueScheduled) return;
+
+        Handler handler = manager.getHandler();
+        long elapsed = SystemClock.uptimeMillis() - lastQueueTime;
+
+        if(handler == null || elapsed >= QUEUE_UPDATE_INTERVAL) {
+            postQueue();
+        } else {
+            queueScheduled = true;
+            handler.postDelayed(queuePoster, QUEUE_UPDATE_INTERVAL - elapsed);
+        }
+    }
+
+    /**
+     * Sends a window of the queue around the current track to the session, if it has changed
+     */
+    private void postQueue() {
+        queueScheduled = false;
+
+        ExoPlayback<?> playback = manager.getPlayback();
+        List<QueueItem> items = new ArrayList<>();
+
+        if(playback != null) {
+            for(Track track : playback.getPlaybackWindow(QUEUE_WINDOW_BEFORE, QUEUE_WINDOW_AFTER)) {
+                items.add(track.toQueueItem());
+            }
+        }
+
+        // Queue items are cached in the tracks until their metadata changes, so the same items mean nothing has changed
+        if(items.equals(sessionQueue)) return;
+
+        session.setQueue(items.isEmpty() ? null : items);
+
+        sessionQueue = items;
+        lastQueueTime = SystemClock.uptimeMillis();
+        Metrics.increment("sessionQueueUpdates");
+    }
+
     /**
      * Updates the playback state
      * @param playback The player
@@ -226,6 +398,60 @@ public class MetadataManager {
     public void updatePlayback(ExoPlayback playback) {
         int state = playback.getState();
         boolean playing = Utils.isPlaying(state);
+
+        // The notification only depends on whether it's playing, so the other state changes don't need to rebuild it
+        if(actionsDirty || playing != notificationPlaying) {
+            updateActions(playing);
+
+            actionsDirty = false;
+            notificationPlaying = playing;
+            notificationDirty = true;
+        }
+
+        // Updates the media session state
+        PlaybackStateCompat.Builder pb = new PlaybackStateCompat.Builder();
+        pb.setActions(actions);
+        pb.setState(state, playback.getPosition(), playback.getRate());
+        pb.setBufferedPosition(playback.getBufferedPosition());
+
+        Track track = playback.getCurrentTrack();
+        if(track != null) pb.setActiveQueueItemId(track.queueId);
+
+        session.setPlaybackState(pb.build());
+        updateNotification();
+    }
+
+    public void setActive(boolean active) {
+        this.session.setActive(active);
+
+        updateNotification();
+    }
+
+    public void destroy() {
+        Handler handler = manager.getHandler();
+        if(handler != null) {
+            handler.removeCallbacks(notificationPoster);
+            handler.removeCallbacks(queuePoster);
+        }
+
+        artworkLoader.destroy();
+        service.stopForeground(true);
+
+        // The session is kept for the media browsers, only cleared
+        session.setActive(false);
+        session.setCallback(null);
+        session.setPlaybackState(new PlaybackStateCompat.Builder().setState(PlaybackStateCompat.STATE_NONE, 0, 0).build());
+        session.setMetadata(null);
+        session.setQueue(null);
+        MusicBrowserService.releaseSession();
+        Metrics.set("activeSessions", activeSessions.decrementAndGet());
+    }
+
+    /**
+     * Rebuilds the notification buttons
+     * @param playing Whether the player is playing
+     */
+    private void updateActions(boolean playing) {
         List<Integer> compact = new ArrayList<>();
         builder.mActions.clear();
 
@@ -273,38 +499,83 @@ public class MetadataManager {
             builder.setStyle(style);
 
         }
-
-        // Updates the media session state
-        PlaybackStateCompat.Builder pb = new PlaybackStateCompat.Builder();
-        pb.setActions(actions);
-        pb.setState(state, playback.getPosition(), playback.getRate());
-        pb.setBufferedPosition(playback.getBufferedPosition());
-
-        session.setPlaybackState(pb.build());
-        updateNotification();
     }
 
-    public void setActive(boolean active) {
-        this.session.setActive(active);
+    private void setLargeIcon(Bitmap icon) {
+        if(icon == largeIcon) return;
 
-        updateNotification();
+        builder.setLargeIcon(largeIcon = icon);
+        notificationDirty = true;
     }
 
-    public void destroy() {
-        service.stopForeground(true);
+    /**
+     * Updates the notification texts, only marking it as changed when they differ
+     */
+    private void setContent(String title, String artist, String album) {
+        if(!TextUtils.equals(title, contentTitle)) {
+            builder.setContentTitle(contentTitle = title);
+            notificationDirty = true;
+        }
 
-        session.setActive(false);
-        session.release();
+        if(!TextUtils.equals(artist, contentText)) {
+            builder.setContentText(contentText = artist);
+            notificationDirty = true;
+        }
+
+        if(!TextUtils.equals(album, subText)) {
+            builder.setSubText(subText = album);
+            notificationDirty = true;
+        }
     }
 
+    /**
+     * Posts the notification if it has changed, at most once per notification interval.
+     * Changes made while a post is waiting are included in it.
+     */
     private void updateNotification() {
-        if(session.isActive()) {
-            service.startForeground(1, builder.build());
+        Handler handler = manager.getHandler();
+
+        if(!session.isActive()) {
+            if(handler != null) handler.removeCallbacks(notificationPoster);
+            notificationScheduled = false;
+
+            if(foreground) {
+                service.stopForeground(true);
+                foreground = false;
+                notificationDirty = true;
+            }
+            return;
+        }
+
+        if(foreground && !notificationDirty) {
+            Metrics.increment("notificationsSkipped");
+            return;
+        }
+
+        if(notificationScheduled) return;
+
+        long elapsed = SystemClock.uptimeMillis() - lastNotificationTime;
+
+        if(!foreground || handler == null || elapsed >= notificationInterval) {
+            postNotification();
         } else {
-            service.stopForeground(true);
+            notificationScheduled = true;
+            handler.postDelayed(notificationPoster, notificationInterval - elapsed);
         }
     }
 
+    private void postNotification() {
+        notificationScheduled = false;
+        if(!session.isActive()) return;
+
+        service.startForeground(1, builder.build());
+
+        foreground = true;
+        notificationDirty = false;
+        lastNotificationTime = SystemClock.uptimeMillis();
+        Metrics.increment("notificationUpdates");
+    }
+
     private int getIcon(Bundle options, String propertyName, int defaultIcon) {
         if(!options.containsKey(propertyName)) return defaultIcon;
 
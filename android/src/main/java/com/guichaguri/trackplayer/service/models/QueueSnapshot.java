@@ -0,0 +1,103 @@
+package com.guichaguri.trackplayer.service.models;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * An immutable copy of the queue that can be safely read from any thread.
+ *
+ * Only the list is copied, the tracks are shared with the queue, as they are never changed once queued.
+ * The id indexes are built on the first lookup.
+ *
+ * @author Guichaguri
+ */
+public class QueueSnapshot extends AbstractList<Track> implements RandomAccess {
+
+    public static final QueueSnapshot EMPTY = new QueueSnapshot(new Track[0], 0);
+
+    private final Track[] tracks;
+    private final long version;
+
+    private volatile Map<String, Integer> ids;
+    private volatile Map<Long, Integer> queueIds;
+
+    QueueSnapshot(List<Track> tracks, long version) {
+        this(tracks.toArray(new Track[0]), version);
+    }
+
+    private QueueSnapshot(Track[] tracks, long version) {
+        this.tracks = tracks;
+        this.version = version;
+    }
+
+    @Override
+    public Track get(int index) {
+        return tracks[index];
+    }
+
+    @Override
+    public int size() {
+        return tracks.length;
+    }
+
+    /**
+     * Gets the version of the queue this snapshot was taken from
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets a track, checking the bounds
+     * @param index The position
+     * @return The track or {@code null} if the position is out of bounds
+     */
+    public Track getOrNull(int index) {
+        return index < 0 || index >= tracks.length ? null : tracks[index];
+    }
+
+    /**
+     * Gets the position of a track
+     * @param id The track id
+     * @return The position or -1 if it's not in the queue
+     */
+    public int indexOfId(String id) {
+        Map<String, Integer> ids = this.ids;
+
+        if(ids == null) {
+            ids = new HashMap<>();
+
+            // Iterates backwards so the first occurrence of a duplicated id wins
+            for(int i = tracks.length - 1; i >= 0; i--) ids.put(tracks[i].id, i);
+
+            this.ids = ids;
+        }
+
+        Integer index = id == null ? null : ids.get(id);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets the position of a track
+     * @param queueId The queue item id
+     * @return The position or -1 if it's not in the queue
+     */
+    public int indexOfQueueId(long queueId) {
+        Map<Long, Integer> queueIds = this.queueIds;
+
+        if(queueIds == null) {
+            queueIds = new HashMap<>();
+
+            for(int i = tracks.length - 1; i >= 0; i--) queueIds.put(tracks[i].queueId, i);
+
+            this.queueIds = queueIds;
+        }
+
+        Integer index = queueIds.get(queueId);
+        return index == null ? -1 : index;
+    }
+
+}
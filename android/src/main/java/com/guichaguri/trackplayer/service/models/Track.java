@@ -25,14 +25,23 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static android.support.v4.media.MediaMetadataCompat.*;
 
 /**
+ * Tracks are not changed once they're in the queue, so they can be read from any thread.
+ * Metadata updates are applied to a {@link #copy()} that replaces the track in the queue.
+ *
  * @author Guichaguri
  */
 public class Track {
 
+    private static final AtomicLong nextQueueId = new AtomicLong(System.currentTimeMillis());
+
+    public static final int CHANGED_METADATA = 1;
+    public static final int CHANGED_ARTWORK = 2;
+
     public static List<Track> createTracks(Context context, List objects, int ratingType) {
         List<Track> tracks = new ArrayList<>();
 
@@ -72,6 +81,8 @@ public class Track {
 
     public final long queueId;
 
+    private QueueItem queueItem;
+
     public Track(Context context, Bundle bundle, int ratingType) {
         id = bundle.getString("id");
 
@@ -105,24 +116,83 @@ public class Track {
 
         setMetadata(context, bundle, ratingType);
 
-        queueId = System.currentTimeMillis();
+        queueId = nextQueueId.getAndIncrement();
         originalItem = bundle;
     }
 
-    public void setMetadata(Context context, Bundle bundle, int ratingType) {
-        artwork = Utils.getUri(context, bundle, "artwork");
+    private Track(Track track) {
+        id = track.id;
+        uri = track.uri;
+        resourceId = track.resourceId;
+        type = track.type;
+        contentType = track.contentType;
+        userAgent = track.userAgent;
+        artwork = track.artwork;
+        title = track.title;
+        artist = track.artist;
+        album = track.album;
+        date = track.date;
+        genre = track.genre;
+        duration = track.duration;
+        originalItem = track.originalItem;
+        rating = track.rating;
+        headers = track.headers;
+        queueId = track.queueId;
+        queueItem = track.queueItem;
+    }
+
+    /**
+     * Copies the track, keeping its queue id
+     */
+    public Track copy() {
+        return new Track(this);
+    }
+
+    /**
+     * Updates the metadata, merging the given properties into the current ones
+     * @return The changed fields, as a combination of {@link #CHANGED_METADATA} and {@link #CHANGED_ARTWORK}
+     */
+    public int setMetadata(Context context, Bundle bundle, int ratingType) {
+        Bundle item = bundle;
+
+        if (originalItem != null && originalItem != bundle) {
+            // Copies the item instead of changing it, as it might be read from other threads
+            item = new Bundle(originalItem);
+            item.putAll(bundle);
+        }
 
-        title = bundle.getString("title");
-        artist = bundle.getString("artist");
-        album = bundle.getString("album");
-        date = bundle.getString("date");
-        genre = bundle.getString("genre");
-        duration = Utils.toMillis(bundle.getDouble("duration", 0));
+        Uri artwork = Utils.getUri(context, item, "artwork");
+        String title = item.getString("title");
+        String artist = item.getString("artist");
+        String album = item.getString("album");
+        String date = item.getString("date");
+        String genre = item.getString("genre");
+        long duration = Utils.toMillis(item.getDouble("duration", 0));
+        RatingCompat rating = Utils.getRating(item, "rating", ratingType);
 
-        rating = Utils.getRating(bundle, "rating", ratingType);
+        int changes = 0;
 
-        if (originalItem != null && originalItem != bundle)
-            originalItem.putAll(bundle);
+        if (!isEqual(artwork, this.artwork)) changes |= CHANGED_ARTWORK;
+
+        if (!isEqual(title, this.title) || !isEqual(artist, this.artist) || !isEqual(album, this.album)
+                || !isEqual(date, this.date) || !isEqual(genre, this.genre) || duration != this.duration
+                || !isEqual(rating, this.rating)) {
+            changes |= CHANGED_METADATA;
+        }
+
+        this.artwork = artwork;
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.date = date;
+        this.genre = genre;
+        this.duration = duration;
+        this.rating = rating;
+
+        if (originalItem != null) originalItem = item;
+        if (changes != 0) queueItem = null;
+
+        return changes;
     }
 
     public MediaMetadataCompat.Builder toMediaMetadata() {
@@ -152,6 +222,9 @@ public class Track {
     }
 
     public QueueItem toQueueItem() {
+        // Reused until the metadata changes, so unchanged queue windows can be detected by identity
+        if(queueItem != null) return queueItem;
+
         MediaDescriptionCompat descr = new MediaDescriptionCompat.Builder()
                 .setTitle(title)
                 .setSubtitle(artist)
@@ -160,7 +233,7 @@ public class Track {
                 .setIconUri(artwork)
                 .build();
 
-        return new QueueItem(descr, queueId);
+        return queueItem = new QueueItem(descr, queueId);
     }
 
     public MediaSource toMediaSource(Context ctx, LocalPlayback playback) {
@@ -225,4 +298,15 @@ public class Track {
                         .createMediaSource(uri);
         }
     }
+
+    private static boolean isEqual(Object a, Object b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+
+        // RatingCompat doesn't implement equals, but its string contains both the style and the value
+        if (a instanceof RatingCompat) return a.toString().equals(b.toString());
+
+        return a.equals(b);
+    }
+
 }
@@ -0,0 +1,232 @@
+package com.guichaguri.trackplayer.service.models;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A list of tracks that keeps an index of track ids and queue ids,
+ * allowing constant time lookups of the track positions.
+ *
+ * When the same id is present more than once, the first occurrence is indexed.
+ *
+ * The queue is only changed in the service thread. Other threads read the
+ * immutable {@link QueueSnapshot} published through {@link #publish()}.
+ *
+ * @author Guichaguri
+ */
+public class TrackQueue extends AbstractList<Track> implements RandomAccess {
+
+    private final ArrayList<Track> tracks = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Map<Long, Integer> queueIds = new HashMap<>();
+    private long version = 0;
+    private volatile QueueSnapshot snapshot = QueueSnapshot.EMPTY;
+
+    @Override
+    public Track get(int index) {
+        return tracks.get(index);
+    }
+
+    @Override
+    public int size() {
+        return tracks.size();
+    }
+
+    /**
+     * Gets the queue version, which is incremented on every change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the last published snapshot. Can be called from any thread.
+     */
+    public QueueSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publishes a snapshot of the current queue, if it has changed since the last one
+     */
+    public void publish() {
+        if(snapshot.getVersion() != version) {
+            snapshot = new QueueSnapshot(tracks, version);
+        }
+    }
+
+    /**
+     * Increments the version without changing the queue, for changes that affect how it's read
+     */
+    public void invalidate() {
+        version++;
+    }
+
+    /**
+     * Gets the position of a track
+     * @param id The track id
+     * @return The position or -1 if it's not in the queue
+     */
+    public int indexOfId(String id) {
+        Integer index = id == null ? null : ids.get(id);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets the position of a track
+     * @param queueId The queue item id
+     * @return The position or -1 if it's not in the queue
+     */
+    public int indexOfQueueId(long queueId) {
+        Integer index = queueIds.get(queueId);
+        return index == null ? -1 : index;
+    }
+
+    @Override
+    public Track set(int index, Track track) {
+        Track previous = tracks.get(index);
+
+        version++;
+
+        if(previous == track || (previous.queueId == track.queueId && previous.id.equals(track.id))) {
+            // The indexes won't change
+            return tracks.set(index, track);
+        }
+
+        unindex(previous, index);
+        tracks.set(index, track);
+        reindex(index);
+
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Track track) {
+        tracks.add(index, track);
+        modCount++;
+        version++;
+        reindex(index);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Track> c) {
+        if(c.isEmpty()) return false;
+
+        tracks.addAll(index, c);
+        modCount++;
+        version++;
+        reindex(index);
+        return true;
+    }
+
+    @Override
+    public Track remove(int index) {
+        Track track = tracks.get(index);
+
+        unindex(track, index);
+        tracks.remove(index);
+        modCount++;
+        version++;
+        reindex(index);
+
+        return track;
+    }
+
+    @Override
+    public void removeRange(int fromIndex, int toIndex) {
+        if(fromIndex >= toIndex) return;
+
+        for(int i = fromIndex; i < toIndex; i++) {
+            unindex(tracks.get(i), i);
+        }
+
+        tracks.subList(fromIndex, toIndex).clear();
+        modCount++;
+        version++;
+        reindex(fromIndex);
+    }
+
+    /**
+     * Removes multiple tracks in a single pass
+     * @param indexes The positions to remove, sorted in ascending order and without duplicates
+     */
+    public void removeIndexes(List<Integer> indexes) {
+        if(indexes.isEmpty()) return;
+
+        int first = indexes.get(0);
+        int next = 0;
+        int write = first;
+
+        for(int read = first; read < tracks.size(); read++) {
+            Track track = tracks.get(read);
+
+            if(next < indexes.size() && indexes.get(next) == read) {
+                unindex(track, read);
+                next++;
+            } else {
+                tracks.set(write++, track);
+            }
+        }
+
+        tracks.subList(write, tracks.size()).clear();
+        modCount++;
+        version++;
+        reindex(first);
+    }
+
+    /**
+     * Moves a track to another position
+     * @param fromIndex The current position
+     * @param toIndex The new position, after the track is removed from its current position
+     */
+    public void move(int fromIndex, int toIndex) {
+        if(fromIndex == toIndex) return;
+
+        tracks.add(toIndex, tracks.remove(fromIndex));
+        modCount++;
+        version++;
+        reindex(Math.min(fromIndex, toIndex));
+    }
+
+    @Override
+    public void clear() {
+        tracks.clear();
+        ids.clear();
+        queueIds.clear();
+        modCount++;
+        version++;
+    }
+
+    /**
+     * Removes the index entries of a track that is going to be removed
+     */
+    private void unindex(Track track, int index) {
+        Integer id = ids.get(track.id);
+        if(id != null && id == index) ids.remove(track.id);
+
+        Integer queueId = queueIds.get(track.queueId);
+        if(queueId != null && queueId == index) queueIds.remove(track.queueId);
+    }
+
+    /**
+     * Updates the index entries of every track located at or after the given position
+     */
+    private void reindex(int from) {
+        // Iterates backwards so the first occurrence of a duplicated id wins
+        for(int i = tracks.size() - 1; i >= from; i--) {
+            Track track = tracks.get(i);
+
+            Integer id = ids.get(track.id);
+            if(id == null || id >= from) ids.put(track.id, i);
+
+            Integer queueId = queueIds.get(track.queueId);
+            if(queueId == null || queueId >= from) queueIds.put(track.queueId, i);
+        }
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.guichaguri.trackplayer.service.player;
 
 import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
 import com.facebook.react.bridge.Promise;
@@ -16,9 +18,12 @@ import com.google.android.exoplayer2.metadata.id3.UrlLinkFrame;
 import com.google.android.exoplayer2.source.TrackGroup;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.guichaguri.trackplayer.service.Metrics;
 import com.guichaguri.trackplayer.service.MusicManager;
 import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.models.QueueSnapshot;
 import com.guichaguri.trackplayer.service.models.Track;
+import com.guichaguri.trackplayer.service.models.TrackQueue;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -33,7 +38,7 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
     protected final MusicManager manager;
     protected final T player;
 
-    protected List<Track> queue = Collections.synchronizedList(new ArrayList<>());
+    protected final TrackQueue queue = new TrackQueue();
 
     // https://github.com/google/ExoPlayer/issues/2728
     protected int lastKnownWindow = C.INDEX_UNSET;
@@ -41,6 +46,15 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
     protected int previousState = PlaybackStateCompat.STATE_NONE;
     protected float volumeMultiplier = 1.0F;
 
+    /**
+     * How often the snapshot is refreshed in milliseconds while playing or loading, when there's no progress interval
+     */
+    private static final long SNAPSHOT_UPDATE_INTERVAL = 1000;
+
+    private final Runnable progressUpdater = this::onProgressUpdate;
+    private volatile PlaybackSnapshot snapshot = PlaybackSnapshot.EMPTY;
+    private boolean shuffleOrderPending = false;
+
     public ExoPlayback(Context context, MusicManager manager, T player) {
         this.context = context;
         this.manager = manager;
@@ -54,25 +68,259 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
         player.addListener(this);
     }
 
-    public List<Track> getQueue() {
+    public TrackQueue getQueue() {
         return queue;
     }
 
+    /**
+     * Gets the last published queue snapshot. Can be called from any thread.
+     */
+    public QueueSnapshot getQueueSnapshot() {
+        return queue.getSnapshot();
+    }
+
     public abstract void add(Track track, int index, Promise promise);
 
     public abstract void add(Collection<Track> tracks, int index, Promise promise);
 
     public abstract void remove(List<Integer> indexes, Promise promise);
 
-    public abstract void removeUpcomingTracks();
+    public abstract void removeUpcomingTracks(Promise promise);
+
+    public abstract void move(int fromIndex, int toIndex, Promise promise);
+
+    public abstract void setQueue(List<Track> tracks, int startIndex, long startPosition, Promise promise);
+
+    /**
+     * Replaces a track with its updated copy
+     * @param index The track position
+     * @param track The updated track
+     * @param changes The changed fields, as returned by {@link Track#setMetadata}
+     */
+    public void updateTrack(int index, Track track, int changes) {
+        // Nothing has changed, so there's nothing to refetch
+        if(changes == 0) return;
 
-    public void updateTrack(int index, Track track) {
         int currentIndex = player.getCurrentWindowIndex();
 
         queue.set(index, track);
 
         if(currentIndex == index)
-            manager.getMetadata().updateMetadata(track);
+            manager.getMetadata().updateMetadata(track, changes);
+
+        ArrayList<String> ids = new ArrayList<>();
+        ids.add(track.id);
+
+        Bundle data = new Bundle();
+        data.putStringArrayList("ids", ids);
+        onQueueChanged("update", data);
+    }
+
+    /**
+     * Replaces tracks with their updated copies, publishing the current track metadata at most once
+     * @param indexes The track positions
+     * @param tracks The updated tracks
+     * @param changes The changed fields of each track, as returned by {@link Track#setMetadata}
+     */
+    public void updateTracks(List<Integer> indexes, List<Track> tracks, List<Integer> changes) {
+        int currentIndex = player.getCurrentWindowIndex();
+        int currentChanges = 0;
+        boolean current = false;
+        ArrayList<String> ids = new ArrayList<>();
+
+        for(int i = 0; i < indexes.size(); i++) {
+            int index = indexes.get(i);
+            if(changes.get(i) == 0) continue;
+
+            if(index == currentIndex) {
+                current = true;
+                currentChanges |= changes.get(i);
+            }
+
+            queue.set(index, tracks.get(i));
+            ids.add(tracks.get(i).id);
+        }
+
+        // Nothing has changed, so there's nothing to refetch
+        if(ids.isEmpty()) return;
+
+        if(current)
+            manager.getMetadata().updateMetadata(queue.get(currentIndex), currentChanges);
+
+        Bundle data = new Bundle();
+        data.putStringArrayList("ids", ids);
+        onQueueChanged("update", data);
+    }
+
+    /**
+     * Notifies that tracks were inserted in the queue
+     */
+    protected void onQueueInserted(int index, Collection<Track> tracks) {
+        ArrayList<String> ids = new ArrayList<>(tracks.size());
+        for(Track track : tracks) ids.add(track.id);
+
+        Bundle data = new Bundle();
+        data.putInt("index", index);
+        data.putStringArrayList("ids", ids);
+        onQueueChanged("insert", data);
+    }
+
+    /**
+     * Notifies that ranges of tracks were removed from the queue
+     * @param ranges The removed ranges, created with {@link #createRange(int, int)}, from the last to the first
+     */
+    protected void onQueueRemoved(ArrayList<Bundle> ranges) {
+        Bundle data = new Bundle();
+        data.putParcelableArrayList("ranges", ranges);
+        onQueueChanged("remove", data);
+    }
+
+    protected static Bundle createRange(int index, int count) {
+        Bundle range = new Bundle();
+        range.putInt("index", index);
+        range.putInt("count", count);
+        return range;
+    }
+
+    /**
+     * Notifies a queue change, tagged with the current queue version
+     * @param type The change type
+     * @param data The change details
+     */
+    protected void onQueueChanged(String type, Bundle data) {
+        queue.publish();
+
+        data.putString("type", type);
+        data.putDouble("version", queue.getVersion());
+        manager.onQueueChanged(data);
+
+        if("update".equals(type) || "order".equals(type)) {
+            // The timeline is already up to date, but the upcoming artwork might have changed
+            manager.getMetadata().prefetchArtwork(this);
+        } else {
+            // The upcoming tracks are prefetched again once the timeline is updated
+            manager.getMetadata().cancelArtworkPrefetch();
+        }
+
+        manager.getMetadata().updateQueue();
+    }
+
+    /**
+     * Gets the tracks that are going to be played after the current one, taking the shuffle and repeat modes into account
+     * @param count The maximum amount of tracks
+     * @return The tracks or an empty list if the timeline is not up to date with the queue yet
+     */
+    public List<Track> getUpcomingTracks(int count) {
+        QueueSnapshot queue = getQueueSnapshot();
+        Timeline timeline = player.getCurrentTimeline();
+        List<Track> tracks = new ArrayList<>();
+
+        if(timeline.isEmpty() || timeline.getWindowCount() != queue.size()) return tracks;
+
+        int current = player.getCurrentWindowIndex();
+        int repeatMode = player.getRepeatMode() == Player.REPEAT_MODE_ONE ? Player.REPEAT_MODE_OFF : player.getRepeatMode();
+        boolean shuffle = player.getShuffleModeEnabled();
+        int index = current;
+
+        while(tracks.size() < count) {
+            index = timeline.getNextWindowIndex(index, repeatMode, shuffle);
+            if(index == C.INDEX_UNSET || index == current) break;
+
+            tracks.add(queue.get(index));
+        }
+
+        return tracks;
+    }
+
+    /**
+     * Gets the tracks around the current one in the order they're going to be played
+     * @param before The maximum amount of tracks before the current one
+     * @param after The maximum amount of tracks after the current one
+     * @return The tracks, including the current one
+     */
+    public List<Track> getPlaybackWindow(int before, int after) {
+        QueueSnapshot queue = getQueueSnapshot();
+        Timeline timeline = player.getCurrentTimeline();
+        if(queue.isEmpty()) return queue;
+
+        int current = Math.min(player.getCurrentWindowIndex(), queue.size() - 1);
+
+        // Uses the queue order when not shuffling or when the timeline is not up to date with the queue yet
+        if(!player.getShuffleModeEnabled() || timeline.getWindowCount() != queue.size()) {
+            return queue.subList(Math.max(0, current - before), Math.min(queue.size(), current + after + 1));
+        }
+
+        List<Track> tracks = new ArrayList<>(before + after + 1);
+        int index = current;
+
+        while(tracks.size() < before) {
+            index = timeline.getPreviousWindowIndex(index, Player.REPEAT_MODE_OFF, true);
+            if(index == C.INDEX_UNSET) break;
+
+            tracks.add(queue.get(index));
+        }
+
+        Collections.reverse(tracks);
+        tracks.add(queue.get(current));
+        index = current;
+
+        for(int i = 0; i < after; i++) {
+            index = timeline.getNextWindowIndex(index, Player.REPEAT_MODE_OFF, true);
+            if(index == C.INDEX_UNSET) break;
+
+            tracks.add(queue.get(index));
+        }
+
+        return tracks;
+    }
+
+    /**
+     * Gets the queue positions in the order they're going to be played while the shuffle mode is enabled.
+     * When the timeline is not up to date with the queue yet, an {@code order} change is sent once it is.
+     * @return The positions or {@code null} if the shuffle mode is disabled or the order is not known yet
+     */
+    public int[] getShuffleOrder() {
+        if(!player.getShuffleModeEnabled()) return null;
+
+        QueueSnapshot queue = getQueueSnapshot();
+        Timeline timeline = player.getCurrentTimeline();
+
+        if(timeline.getWindowCount() != queue.size()) {
+            shuffleOrderPending = true;
+            return null;
+        }
+
+        int[] order = new int[queue.size()];
+        int index = timeline.getFirstWindowIndex(true);
+
+        for(int i = 0; i < order.length && index != C.INDEX_UNSET; i++) {
+            order[i] = index;
+            index = timeline.getNextWindowIndex(index, Player.REPEAT_MODE_OFF, true);
+        }
+
+        return order;
+    }
+
+    public int getRepeatMode() {
+        return player.getRepeatMode();
+    }
+
+    public void setRepeatMode(int repeatMode) {
+        player.setRepeatMode(repeatMode);
+    }
+
+    public boolean getShuffleMode() {
+        return player.getShuffleModeEnabled();
+    }
+
+    public void setShuffleMode(boolean enabled, long seed, Promise promise) {
+        player.setShuffleModeEnabled(enabled);
+
+        // The playback order has changed
+        queue.invalidate();
+        onQueueChanged("order", new Bundle());
+
+        promise.resolve(null);
     }
 
     public Track getCurrentTrack() {
@@ -86,18 +334,18 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
             return;
         }
 
-        for(int i = 0; i < queue.size(); i++) {
-            if(id.equals(queue.get(i).id)) {
-                lastKnownWindow = player.getCurrentWindowIndex();
-                lastKnownPosition = player.getCurrentPosition();
+        int index = queue.indexOfId(id);
 
-                player.seekToDefaultPosition(i);
-                promise.resolve(null);
-                return;
-            }
+        if(index == -1) {
+            promise.reject("track_not_in_queue", "Given track ID was not found in queue");
+            return;
         }
 
-        promise.reject("track_not_in_queue", "Given track ID was not found in queue");
+        lastKnownWindow = player.getCurrentWindowIndex();
+        lastKnownPosition = player.getCurrentPosition();
+
+        player.seekToDefaultPosition(index);
+        promise.resolve(null);
     }
 
     public void skipToPrevious(Promise promise) {
@@ -225,40 +473,121 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
         return PlaybackStateCompat.STATE_NONE;
     }
 
+    /**
+     * Gets the last published playback state. This method can be called from any thread.
+     */
+    public PlaybackSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publishes a new snapshot of the playback state for cross-thread readers
+     */
+    protected void publishSnapshot() {
+        Track track = getCurrentTrack();
+        long position = player.getCurrentPosition();
+        long bufferedPosition = player.getBufferedPosition();
+
+        snapshot = new PlaybackSnapshot(track != null ? track.id : null, getState(),
+                position == C.POSITION_UNSET ? 0 : position,
+                bufferedPosition == C.POSITION_UNSET ? 0 : bufferedPosition,
+                getDuration(), getRate());
+    }
+
     public void destroy() {
+        Handler handler = manager.getHandler();
+        if(handler != null) handler.removeCallbacks(progressUpdater);
+
         player.release();
     }
 
+    /**
+     * Schedules the next progress update, or cancels it when the player is neither playing nor loading.
+     * Without a progress interval, it still runs to keep the buffered position in the snapshot up to date.
+     */
+    public void updateProgressTimer() {
+        Handler handler = manager.getHandler();
+        if(handler == null) return;
+
+        handler.removeCallbacks(progressUpdater);
+
+        long interval = manager.getProgressUpdateInterval();
+        boolean playing = Utils.isPlaying(getState());
+
+        if(interval > 0 && playing) {
+            handler.postDelayed(progressUpdater, interval);
+        } else if(playing || player.isLoading()) {
+            handler.postDelayed(progressUpdater, SNAPSHOT_UPDATE_INTERVAL);
+        }
+    }
+
+    private void onProgressUpdate() {
+        publishSnapshot();
+
+        int state = getState();
+
+        if(manager.getProgressUpdateInterval() > 0 && Utils.isPlaying(state)) {
+            long position = getPosition();
+            long bufferedPosition = getBufferedPosition();
+
+            manager.onProgressUpdate(getCurrentTrack(),
+                    position == C.POSITION_UNSET ? 0 : position,
+                    bufferedPosition == C.POSITION_UNSET ? 0 : bufferedPosition,
+                    getDuration(), state);
+        }
+
+        updateProgressTimer();
+    }
+
     @Override
     public void onTimelineChanged(Timeline timeline, Object manifest, int reason) {
         Log.d(Utils.LOG, "onTimelineChanged: " + reason);
+        Metrics.increment("timelineUpdates");
 
         if((reason == Player.TIMELINE_CHANGE_REASON_PREPARED || reason == Player.TIMELINE_CHANGE_REASON_DYNAMIC) && !timeline.isEmpty()) {
             onPositionDiscontinuity(Player.DISCONTINUITY_REASON_INTERNAL);
         }
+
+        manager.getMetadata().prefetchArtwork(this);
+        manager.getMetadata().updateQueue();
+
+        if(shuffleOrderPending && timeline.getWindowCount() == queue.size()) {
+            // The shuffle order that couldn't be read before is now known
+            shuffleOrderPending = false;
+            queue.invalidate();
+            onQueueChanged("order", new Bundle());
+        }
     }
 
     @Override
     public void onPositionDiscontinuity(int reason) {
         Log.d(Utils.LOG, "onPositionDiscontinuity: " + reason);
 
-        if(lastKnownWindow != player.getCurrentWindowIndex()) {
-            Track previous = lastKnownWindow == C.INDEX_UNSET ? null : queue.get(lastKnownWindow);
+        boolean ended = reason == Player.DISCONTINUITY_REASON_PERIOD_TRANSITION && lastKnownWindow != C.INDEX_UNSET;
+
+        // A transition to the same window means the track looped in the repeat track mode
+        if(lastKnownWindow != player.getCurrentWindowIndex() || ended) {
+            // The window may no longer exist in the queue if it was removed before the timeline was updated
+            Track previous = getQueueSnapshot().getOrNull(lastKnownWindow);
             Track next = getCurrentTrack();
 
             // Track changed because it ended
             // We'll use its duration instead of the last known position
-            if (reason == Player.DISCONTINUITY_REASON_PERIOD_TRANSITION && lastKnownWindow != C.INDEX_UNSET) {
+            if (ended) {
                 if (lastKnownWindow >= player.getCurrentTimeline().getWindowCount()) return;
                 long duration = player.getCurrentTimeline().getWindow(lastKnownWindow, new Window()).getDurationMs();
                 if(duration != C.TIME_UNSET) lastKnownPosition = duration;
             }
 
             manager.onTrackUpdate(previous, lastKnownPosition, next);
+            manager.getMetadata().prefetchArtwork(this);
+            manager.getMetadata().updateQueue();
         }
 
         lastKnownWindow = player.getCurrentWindowIndex();
         lastKnownPosition = player.getCurrentPosition();
+
+        publishSnapshot();
     }
 
     @Override
@@ -283,12 +612,16 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
     @Override
     public void onLoadingChanged(boolean isLoading) {
         // Buffering updates
+        publishSnapshot();
+        updateProgressTimer();
     }
 
     @Override
     public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
         int state = getState();
 
+        publishSnapshot();
+
         if(state != previousState) {
             if(Utils.isPlaying(state) && !Utils.isPlaying(previousState)) {
                 manager.onPlay();
@@ -301,6 +634,8 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
             manager.onStateChange(state);
             previousState = state;
 
+            updateProgressTimer();
+
             if(state == PlaybackStateCompat.STATE_STOPPED) {
                 manager.onEnd(getCurrentTrack(), getPosition());
             }
@@ -309,12 +644,15 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
 
     @Override
     public void onRepeatModeChanged(int repeatMode) {
-        // Repeat mode update
+        // The upcoming tracks might have changed
+        manager.getMetadata().prefetchArtwork(this);
     }
 
     @Override
     public void onShuffleModeEnabledChanged(boolean shuffleModeEnabled) {
-        // Shuffle mode update
+        // The upcoming tracks might have changed
+        manager.getMetadata().prefetchArtwork(this);
+        manager.getMetadata().updateQueue();
     }
 
     @Override
@@ -335,11 +673,13 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
     @Override
     public void onPlaybackParametersChanged(PlaybackParameters playbackParameters) {
         // Speed or pitch changes
+        publishSnapshot();
     }
 
     @Override
     public void onSeekProcessed() {
         // Finished seeking
+        publishSnapshot();
     }
 
     private void handleId3Metadata(Metadata metadata) {
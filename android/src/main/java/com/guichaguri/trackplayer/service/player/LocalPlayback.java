@@ -1,6 +1,7 @@
 package com.guichaguri.trackplayer.service.player;
 
 import android.content.Context;
+import android.os.Bundle;
 import android.util.Log;
 import com.facebook.react.bridge.Promise;
 import com.google.android.exoplayer2.C;
@@ -11,11 +12,13 @@ import com.google.android.exoplayer2.database.DatabaseProvider;
 import com.google.android.exoplayer2.database.ExoDatabaseProvider;
 import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.ShuffleOrder;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
 import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
 import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.guichaguri.trackplayer.service.Metrics;
 import com.guichaguri.trackplayer.service.MusicManager;
 import com.guichaguri.trackplayer.service.Utils;
 import com.guichaguri.trackplayer.service.models.Track;
@@ -24,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 /**
  * @author Guichaguri
@@ -35,6 +39,7 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
     private SimpleCache cache;
     private ConcatenatingMediaSource source;
     private boolean prepared = false;
+    private final Random random = new Random();
 
     public LocalPlayback(Context context, MusicManager manager, SimpleExoPlayer player, long maxCacheSize) {
         super(context, manager, player);
@@ -74,8 +79,10 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
     public void add(Track track, int index, Promise promise) {
         queue.add(index, track);
         MediaSource trackSource = track.toMediaSource(context, this);
+        Metrics.increment("sourceOperations");
         source.addMediaSource(index, trackSource, manager.getHandler(), Utils.toRunnable(promise));
 
+        onQueueInserted(index, Collections.singletonList(track));
         prepare();
     }
 
@@ -88,8 +95,10 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
         }
 
         queue.addAll(index, tracks);
+        Metrics.increment("sourceOperations");
         source.addMediaSources(index, trackList, manager.getHandler(), Utils.toRunnable(promise));
 
+        onQueueInserted(index, tracks);
         prepare();
     }
 
@@ -100,35 +109,150 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
         // Sort the list so we can loop through sequentially
         Collections.sort(indexes);
 
-        for(int i = indexes.size() - 1; i >= 0; i--) {
-            int index = indexes.get(i);
+        List<Integer> valid = new ArrayList<>(indexes.size());
+        int last = -1;
 
-            // Skip indexes that are the current track or are out of bounds
-            if(index == currentIndex || index < 0 || index >= queue.size()) {
-                // Resolve the promise when the last index is invalid
-                if(i == 0) promise.resolve(null);
-                continue;
+        for(int index : indexes) {
+            // Skip indexes that are the current track, duplicated or are out of bounds
+            if(index == currentIndex || index == last || index < 0 || index >= queue.size()) continue;
+
+            valid.add(index);
+            last = index;
+        }
+
+        if(valid.isEmpty()) {
+            promise.resolve(null);
+            return;
+        }
+
+        queue.removeIndexes(valid);
+
+        // Coalesces consecutive indexes into ranges, removing them from the end
+        // so the lower indexes stay valid. Only the last operation resolves the promise
+        ArrayList<Bundle> ranges = new ArrayList<>();
+        int end = valid.size() - 1;
+
+        while(end >= 0) {
+            int start = end;
+
+            while(start > 0 && valid.get(start - 1) == valid.get(start) - 1) {
+                start--;
             }
 
-            queue.remove(index);
+            int fromIndex = valid.get(start);
+            int toIndex = valid.get(end) + 1;
+
+            ranges.add(createRange(fromIndex, toIndex - fromIndex));
+            Metrics.increment("sourceOperations");
 
-            if(i == 0) {
-                source.removeMediaSource(index, manager.getHandler(), Utils.toRunnable(promise));
+            if(start == 0) {
+                source.removeMediaSourceRange(fromIndex, toIndex, manager.getHandler(), Utils.toRunnable(promise));
             } else {
-                source.removeMediaSource(index);
+                source.removeMediaSourceRange(fromIndex, toIndex);
             }
+
+            end = start - 1;
         }
+
+        onQueueRemoved(ranges);
     }
 
     @Override
-    public void removeUpcomingTracks() {
+    public void removeUpcomingTracks(Promise promise) {
         int currentIndex = player.getCurrentWindowIndex();
-        if (currentIndex == C.INDEX_UNSET) return;
 
-        for (int i = queue.size() - 1; i > currentIndex; i--) {
-            queue.remove(i);
-            source.removeMediaSource(i);
+        if (currentIndex == C.INDEX_UNSET || currentIndex + 1 >= queue.size()) {
+            promise.resolve(null);
+            return;
+        }
+
+        int size = queue.size();
+        queue.removeRange(currentIndex + 1, size);
+
+        Metrics.increment("sourceOperations");
+        source.removeMediaSourceRange(currentIndex + 1, size, manager.getHandler(), Utils.toRunnable(promise));
+
+        ArrayList<Bundle> ranges = new ArrayList<>();
+        ranges.add(createRange(currentIndex + 1, size - currentIndex - 1));
+        onQueueRemoved(ranges);
+    }
+
+    @Override
+    public void move(int fromIndex, int toIndex, Promise promise) {
+        if(fromIndex == toIndex) {
+            promise.resolve(null);
+            return;
+        }
+
+        queue.move(fromIndex, toIndex);
+
+        // Keeps the last known window pointing to the same track, so the move isn't reported as a track change
+        if(lastKnownWindow == fromIndex) {
+            lastKnownWindow = toIndex;
+        } else if(fromIndex < lastKnownWindow && lastKnownWindow <= toIndex) {
+            lastKnownWindow--;
+        } else if(toIndex <= lastKnownWindow && lastKnownWindow < fromIndex) {
+            lastKnownWindow++;
         }
+
+        Metrics.increment("sourceOperations");
+        source.moveMediaSource(fromIndex, toIndex, manager.getHandler(), Utils.toRunnable(promise));
+
+        Bundle data = new Bundle();
+        data.putString("id", queue.get(toIndex).id);
+        data.putInt("from", fromIndex);
+        data.putInt("to", toIndex);
+        onQueueChanged("move", data);
+    }
+
+    @Override
+    public void setQueue(List<Track> tracks, int startIndex, long startPosition, Promise promise) {
+        Track previous = getCurrentTrack();
+        long position = player.getCurrentPosition();
+
+        MediaSource[] trackSources = new MediaSource[tracks.size()];
+
+        for(int i = 0; i < trackSources.length; i++) {
+            trackSources[i] = tracks.get(i).toMediaSource(context, this);
+        }
+
+        queue.clear();
+        queue.addAll(tracks);
+
+        // The source is swapped without resetting the session and the notification
+        source = new ConcatenatingMediaSource(trackSources);
+
+        if(player.getShuffleModeEnabled()) {
+            // Keeps the shuffle mode, starting from the new track
+            source.setShuffleOrder(new QueueShuffleOrder(trackSources.length, startIndex, random.nextLong()));
+        }
+        Metrics.increment("sourceOperations");
+
+        // The track change is reported right below, the timeline update shouldn't report it again
+        lastKnownWindow = startIndex;
+        lastKnownPosition = startPosition;
+
+        Log.d(Utils.LOG, "Preparing the new queue...");
+        player.prepare(source, true, true);
+        player.seekTo(startIndex, startPosition);
+        prepared = true;
+
+        manager.onTrackUpdate(previous, position, queue.get(startIndex));
+        onQueueReset();
+        promise.resolve(null);
+    }
+
+    @Override
+    public void setShuffleMode(boolean enabled, long seed, Promise promise) {
+        if(!enabled) {
+            super.setShuffleMode(false, seed, promise);
+            return;
+        }
+
+        // The current track is kept as the first one in the shuffled order
+        ShuffleOrder order = new QueueShuffleOrder(queue.size(), player.getCurrentWindowIndex(), seed);
+
+        source.setShuffleOrder(order, manager.getHandler(), () -> super.setShuffleMode(true, seed, promise));
     }
 
     private void resetQueue() {
@@ -142,6 +266,13 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
         lastKnownPosition = C.POSITION_UNSET;
 
         manager.onReset();
+        onQueueReset();
+    }
+
+    private void onQueueReset() {
+        Bundle data = new Bundle();
+        data.putInt("total", queue.size());
+        onQueueChanged("reset", data);
     }
 
     @Override
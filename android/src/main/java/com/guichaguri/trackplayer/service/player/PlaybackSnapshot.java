@@ -0,0 +1,46 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.os.SystemClock;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+/**
+ * An immutable copy of the playback state that can be safely read from any thread
+ *
+ * @author Guichaguri
+ */
+public class PlaybackSnapshot {
+
+    public static final PlaybackSnapshot EMPTY = new PlaybackSnapshot(null, PlaybackStateCompat.STATE_NONE, 0, 0, 0, 1);
+
+    public final String trackId;
+    public final int state;
+    public final long position;
+    public final long bufferedPosition;
+    public final long duration;
+    public final float rate;
+    public final long timestamp;
+
+    public PlaybackSnapshot(String trackId, int state, long position, long bufferedPosition, long duration, float rate) {
+        this.trackId = trackId;
+        this.state = state;
+        this.position = position;
+        this.bufferedPosition = bufferedPosition;
+        this.duration = duration;
+        this.rate = rate;
+        this.timestamp = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Gets the position extrapolated from the time elapsed since the snapshot was taken
+     * @return The estimated position in milliseconds
+     */
+    public long getPosition() {
+        if(state != PlaybackStateCompat.STATE_PLAYING) return position;
+
+        long elapsed = SystemClock.elapsedRealtime() - timestamp;
+        long pos = position + (long)(elapsed * rate);
+
+        return duration > 0 ? Math.min(pos, duration) : pos;
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.guichaguri.trackplayer.service.player;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.ShuffleOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A shuffle order that keeps a given track as the first one,
+ * so enabling the shuffle mode doesn't interrupt the current track.
+ *
+ * Insertions and removals are handled the same way as in {@link ShuffleOrder.DefaultShuffleOrder}.
+ *
+ * @author Guichaguri
+ */
+public class QueueShuffleOrder implements ShuffleOrder {
+
+    private final Random random;
+    private final int[] shuffled;
+    private final int[] indexInShuffled;
+
+    /**
+     * Creates a new shuffle order
+     * @param length The amount of tracks
+     * @param firstIndex The track that will be played first, or {@link C#INDEX_UNSET} to shuffle everything
+     * @param seed The random seed
+     */
+    public QueueShuffleOrder(int length, int firstIndex, long seed) {
+        this(createShuffledList(length, firstIndex, new Random(seed)), new Random(seed));
+    }
+
+    private QueueShuffleOrder(int[] shuffled, Random random) {
+        this.shuffled = shuffled;
+        this.random = random;
+        this.indexInShuffled = new int[shuffled.length];
+
+        for(int i = 0; i < shuffled.length; i++) {
+            indexInShuffled[shuffled[i]] = i;
+        }
+    }
+
+    @Override
+    public int getLength() {
+        return shuffled.length;
+    }
+
+    @Override
+    public int getNextIndex(int index) {
+        int shuffledIndex = indexInShuffled[index] + 1;
+        return shuffledIndex < shuffled.length ? shuffled[shuffledIndex] : C.INDEX_UNSET;
+    }
+
+    @Override
+    public int getPreviousIndex(int index) {
+        int shuffledIndex = indexInShuffled[index] - 1;
+        return shuffledIndex >= 0 ? shuffled[shuffledIndex] : C.INDEX_UNSET;
+    }
+
+    @Override
+    public int getLastIndex() {
+        return shuffled.length > 0 ? shuffled[shuffled.length - 1] : C.INDEX_UNSET;
+    }
+
+    @Override
+    public int getFirstIndex() {
+        return shuffled.length > 0 ? shuffled[0] : C.INDEX_UNSET;
+    }
+
+    @Override
+    public ShuffleOrder cloneAndInsert(int insertionIndex, int insertionCount) {
+        int[] insertionPoints = new int[insertionCount];
+        int[] insertionValues = new int[insertionCount];
+
+        for(int i = 0; i < insertionCount; i++) {
+            insertionPoints[i] = random.nextInt(shuffled.length + 1);
+            int swapIndex = random.nextInt(i + 1);
+            insertionValues[i] = insertionValues[swapIndex];
+            insertionValues[swapIndex] = i + insertionIndex;
+        }
+
+        Arrays.sort(insertionPoints);
+
+        int[] newShuffled = new int[shuffled.length + insertionCount];
+        int indexInOldShuffled = 0;
+        int indexInInsertionList = 0;
+
+        for(int i = 0; i < newShuffled.length; i++) {
+            if(indexInInsertionList < insertionCount && indexInOldShuffled == insertionPoints[indexInInsertionList]) {
+                newShuffled[i] = insertionValues[indexInInsertionList++];
+            } else {
+                newShuffled[i] = shuffled[indexInOldShuffled++];
+                if(newShuffled[i] >= insertionIndex) newShuffled[i] += insertionCount;
+            }
+        }
+
+        return new QueueShuffleOrder(newShuffled, new Random(random.nextLong()));
+    }
+
+    @Override
+    public ShuffleOrder cloneAndRemove(int indexFrom, int indexToExclusive) {
+        int removed = indexToExclusive - indexFrom;
+        int[] newShuffled = new int[shuffled.length - removed];
+        int found = 0;
+
+        for(int i = 0; i < shuffled.length; i++) {
+            if(shuffled[i] >= indexFrom && shuffled[i] < indexToExclusive) {
+                found++;
+            } else {
+                newShuffled[i - found] = shuffled[i] >= indexFrom ? shuffled[i] - removed : shuffled[i];
+            }
+        }
+
+        return new QueueShuffleOrder(newShuffled, new Random(random.nextLong()));
+    }
+
+    @Override
+    public ShuffleOrder cloneAndClear() {
+        return new QueueShuffleOrder(new int[0], new Random(random.nextLong()));
+    }
+
+    /**
+     * Shuffles the indexes using the Fisher-Yates algorithm, then swaps the first index into the first position
+     */
+    private static int[] createShuffledList(int length, int firstIndex, Random random) {
+        int[] shuffled = new int[length];
+
+        for(int i = 0; i < length; i++) {
+            int swapIndex = random.nextInt(i + 1);
+            shuffled[i] = shuffled[swapIndex];
+            shuffled[swapIndex] = i;
+        }
+
+        if(firstIndex >= 0 && firstIndex < length) {
+            for(int i = 0; i < length; i++) {
+                if(shuffled[i] != firstIndex) continue;
+
+                shuffled[i] = shuffled[0];
+                shuffled[0] = firstIndex;
+                break;
+            }
+        }
+
+        return shuffled;
+    }
+
+}
@@ -1,5 +1,5 @@
 import React, { useEffect } from "react";
-import { StyleSheet, Text, View } from "react-native";
+import { Platform, StyleSheet, Text, View } from "react-native";
 import TrackPlayer, { usePlaybackState } from "react-native-track-player";
 
 import Player from "../components/Player";
@@ -30,16 +30,32 @@ export default function LandingScreen() {
   async function togglePlayback() {
     const currentTrack = await TrackPlayer.getCurrentTrack();
     if (currentTrack == null) {
-      await TrackPlayer.reset();
-      await TrackPlayer.add(playlistData);
-      await TrackPlayer.add({
-        id: "local-track",
-        url: localTrack,
-        title: "Pure (Demo)",
-        artist: "David Chavez",
-        artwork: "https://picsum.photos/200"
-      });
-      await TrackPlayer.play();
+      const tracks = [
+        ...playlistData,
+        {
+          id: "local-track",
+          url: localTrack,
+          title: "Pure (Demo)",
+          artist: "David Chavez",
+          artwork: "https://picsum.photos/200"
+        }
+      ];
+
+      if (Platform.OS === "android") {
+        // Sets everything up in a single call, with integral numbers as arguments
+        await TrackPlayer.executeBatch([
+          { op: "reset" },
+          { op: "add", args: [tracks] },
+          { op: "setVolume", args: [1] },
+          { op: "setRepeatMode", args: [TrackPlayer.REPEAT_QUEUE] },
+          { op: "seekTo", args: [0] },
+          { op: "play" }
+        ]);
+      } else {
+        await TrackPlayer.reset();
+        await TrackPlayer.add(tracks);
+        await TrackPlayer.play();
+      }
     } else {
       if (playbackState === TrackPlayer.STATE_PAUSED) {
         await TrackPlayer.play();
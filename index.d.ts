@@ -8,7 +8,9 @@ declare namespace RNTrackPlayer {
     | "playback-state"
     | "playback-error"
     | "playback-queue-ended"
+    | "playback-queue-changed"
     | "playback-track-changed"
+    | "playback-progress"
     | "remote-play"
     | "remote-play-id"
     | "remote-play-search"
@@ -24,7 +26,9 @@ declare namespace RNTrackPlayer {
     | "remote-duck"
     | "remote-like"
     | "remote-dislike"
-    | "remote-bookmark";
+    | "remote-bookmark"
+    | "remote-handled"
+    | "browse-children-request";
 
   export type TrackType =
     | "default"
@@ -38,6 +42,7 @@ declare namespace RNTrackPlayer {
   type RatingType = string | number;
   type Capability = string | number;
   type PitchAlgorithm = string | number;
+  type RepeatMode = string | number;
 
   type EventHandler = (type: EventType, ...args: any[]) => void;
   export function registerEventHandler(handler: EventHandler): void;
@@ -96,6 +101,11 @@ declare namespace RNTrackPlayer {
     dislikeOptions?: FeedbackOptions;
     bookmarkOptions?: FeedbackOptions;
     stopWithApp?: boolean;
+    progressUpdateEventInterval?: number;
+    bufferingDebounceInterval?: number;
+    notificationUpdateInterval?: number;
+    artworkPrefetchCount?: number;
+    nativeRemoteControls?: boolean;
 
     capabilities?: Capability[];
     notificationCapabilities?: Capability[];
@@ -121,14 +131,22 @@ declare namespace RNTrackPlayer {
 
   export function add(tracks: Track | Track[], insertBeforeId?: string): Promise<void>;
   export function remove(trackIds: string | string[]): Promise<void>;
+  export function setQueue(tracks: Track | Track[], startId?: string, startPosition?: number): Promise<void>;
   export function skip(trackId: string): Promise<void>;
+  export function move(trackId: string, insertBeforeId?: string): Promise<void>;
   export function skipToNext(): Promise<void>;
   export function skipToPrevious(): Promise<void>;
   export function removeUpcomingTracks(): Promise<void>;
+  export function setShuffleMode(enabled: boolean, seed?: number): Promise<void>;
+  export function getShuffleMode(): Promise<boolean>;
+  export function getShuffleOrder(): Promise<number[] | null>;
+  export function setRepeatMode(mode: RepeatMode): Promise<void>;
+  export function getRepeatMode(): Promise<RepeatMode>;
 
   // Control Center / Notification Metadata Commands
   export function updateOptions(options: MetadataOptions): void;
   export function updateMetadataForTrack(id: string, metadata: TrackMetadata) : Promise<void>;
+  export function updateMetadataForTracks(metadata: { [id: string]: TrackMetadata }) : Promise<void>;
 
   // Player Playback Commands
 
@@ -143,6 +161,17 @@ declare namespace RNTrackPlayer {
   // Player Getters
 
   export function getQueue(): Promise<Track[]>;
+
+  export interface QueuePage {
+    version: number;
+    offset: number;
+    total: number;
+    tracks: Track[] | null;
+    shuffleOrder: number[] | null;
+  }
+
+  export function getQueuePage(offset?: number, limit?: number, knownVersion?: number): Promise<QueuePage>;
+  export function getQueueVersion(): Promise<number>;
   export function getTrack(id: string): Promise<Track>;
   export function getCurrentTrack(): Promise<string>;
   export function getVolume(): Promise<number>;
@@ -152,6 +181,52 @@ declare namespace RNTrackPlayer {
   export function getState(): Promise<State>;
   export function getRate(): Promise<number>;
 
+  export interface Progress {
+    position: number;
+    bufferedPosition: number;
+    duration: number;
+    rate?: number;
+    state?: State;
+    track?: string;
+  }
+
+  export function getProgress(): Promise<Progress>;
+
+  // Batching
+
+  export interface BatchOperation {
+    op: string;
+    args?: any[];
+  }
+
+  export interface BatchResult {
+    op: string;
+    result?: any;
+    error?: { code: string; message: string };
+  }
+
+  export function executeBatch(operations: BatchOperation[]): Promise<BatchResult[]>;
+
+  // Browsing
+
+  export interface BrowseItem {
+    id: string;
+    title?: string;
+    subtitle?: string;
+    artwork?: string | ResourceObject;
+    browsable?: boolean;
+    playable?: boolean;
+  }
+
+  export function setBrowseTree(tree: { [parentId: string]: BrowseItem[] }): Promise<void>;
+  export function setBrowseChildren(parentId: string, items: BrowseItem[], page?: number, pageSize?: number): Promise<void>;
+  export function setBrowseAllowedPackages(packages: string[] | null): Promise<void>;
+
+  // Diagnostics
+
+  export function getDiagnostics(): Promise<{ [key: string]: any }>;
+  export function resetDiagnostics(): Promise<void>;
+
   // Components
 
   export interface ProgressComponentState {
@@ -197,6 +272,10 @@ declare namespace RNTrackPlayer {
   export const CAPABILITY_DISLIKE: Capability;
   export const CAPABILITY_BOOKMARK: Capability;
 
+  export const REPEAT_OFF: RepeatMode;
+  export const REPEAT_TRACK: RepeatMode;
+  export const REPEAT_QUEUE: RepeatMode;
+
   export const PITCH_ALGORITHM_LINEAR: PitchAlgorithm;
   export const PITCH_ALGORITHM_MUSIC: PitchAlgorithm;
   export const PITCH_ALGORITHM_VOICE: PitchAlgorithm;
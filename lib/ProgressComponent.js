@@ -28,14 +28,9 @@ class ProgressComponent extends Component {
      * @private
      */
     async _updateProgress() {
-        // TODO check for performance here
-        // We can create a new native function to reduces these 3 native calls to only one, if needed
         try {
-            const data = {
-                position: await TrackPlayer.getPosition(),
-                bufferedPosition: await TrackPlayer.getBufferedPosition(),
-                duration: await TrackPlayer.getDuration()
-            };
+            const { position, bufferedPosition, duration } = await TrackPlayer.getProgress();
+            const data = { position, bufferedPosition, duration };
 
             if(this._progressUpdates) {
                 this.setState(data);
@@ -18,10 +18,14 @@ const TrackPlayerEvents = {
   REMOTE_LIKE: 'remote-like',
   REMOTE_DISLIKE: 'remote-dislike',
   REMOTE_BOOKMARK: 'remote-bookmark',
+  REMOTE_HANDLED: 'remote-handled',
   PLAYBACK_STATE: 'playback-state',
   PLAYBACK_TRACK_CHANGED: 'playback-track-changed',
   PLAYBACK_QUEUE_ENDED: 'playback-queue-ended',
-  PLAYBACK_ERROR: 'playback-error'
+  PLAYBACK_QUEUE_CHANGED: 'playback-queue-changed',
+  PLAYBACK_ERROR: 'playback-error',
+  PLAYBACK_PROGRESS: 'playback-progress',
+  BROWSE_CHILDREN_REQUEST: 'browse-children-request'
 }
 
 module.exports = TrackPlayerEvents
@@ -130,11 +130,7 @@ const useTrackPlayerProgress = (interval = 1000) => {
     const [state, setState] = useState(initialState);
 
     const getProgress = async () => {
-        const [position, bufferedPosition, duration] = await Promise.all([
-            TrackPlayer.getPosition(),
-            TrackPlayer.getBufferedPosition(),
-            TrackPlayer.getDuration()
-        ])
+        const { position, bufferedPosition, duration } = await TrackPlayer.getProgress();
         setState({ position, bufferedPosition, duration });
     }
 
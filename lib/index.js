@@ -35,13 +35,7 @@ function updateOptions(data) {
     return TrackPlayer.updateOptions(data);
 }
 
-function add(tracks, insertBeforeId) {
-    if(!Array.isArray(tracks)) {
-        tracks = [tracks];
-    }
-
-    if(tracks.length < 1) return;
-
+function resolveTracks(tracks) {
     for(let i = 0; i < tracks.length; i++) {
         // Clone the object before modifying it
         tracks[i] = Object.assign({}, tracks[i]);
@@ -54,7 +48,27 @@ function add(tracks, insertBeforeId) {
         tracks[i].id = `${tracks[i].id}`
     }
 
-    return TrackPlayer.add(tracks, insertBeforeId);
+    return tracks;
+}
+
+function add(tracks, insertBeforeId) {
+    if(!Array.isArray(tracks)) {
+        tracks = [tracks];
+    }
+
+    if(tracks.length < 1) return;
+
+    return TrackPlayer.add(resolveTracks(tracks), insertBeforeId);
+}
+
+function setQueue(tracks, startId, startPosition) {
+    if(!Array.isArray(tracks)) {
+        tracks = [tracks];
+    }
+
+    if(startId != null) startId = `${startId}`;
+
+    return TrackPlayer.setQueue(resolveTracks(tracks), startId, startPosition || 0);
 }
 
 function remove(tracks) {
@@ -65,6 +79,70 @@ function remove(tracks) {
     return TrackPlayer.remove(tracks);
 }
 
+async function getProgress() {
+    if(TrackPlayer.getProgress) {
+        return TrackPlayer.getProgress();
+    }
+
+    // Fallback for platforms that don't have a native implementation
+    const [position, bufferedPosition, duration] = await Promise.all([
+        TrackPlayer.getPosition(),
+        TrackPlayer.getBufferedPosition(),
+        TrackPlayer.getDuration()
+    ]);
+
+    return { position, bufferedPosition, duration };
+}
+
+function getQueuePage(offset, limit, knownVersion) {
+    return TrackPlayer.getQueuePage(offset || 0, limit == null ? -1 : limit, knownVersion == null ? -1 : knownVersion);
+}
+
+function setShuffleMode(enabled, seed) {
+    if(seed == null) seed = Math.floor(Math.random() * Number.MAX_SAFE_INTEGER);
+
+    return TrackPlayer.setShuffleMode(!!enabled, seed);
+}
+
+function executeBatch(operations) {
+    operations = operations.map(({ op, args }) => {
+        args = args ? args.slice() : [];
+
+        if(op === 'add' || op === 'setQueue') {
+            // Resolve the tracks the same way add and setQueue do
+            args[0] = resolveTracks(Array.isArray(args[0]) ? args[0] : [args[0]]);
+        } else if(op === 'remove' && !Array.isArray(args[0])) {
+            args[0] = [args[0]];
+        }
+
+        return { op, args };
+    });
+
+    return TrackPlayer.executeBatch(operations);
+}
+
+function resolveBrowseItems(items) {
+    return items.map(item => Object.assign({}, item, {
+        id: `${item.id}`,
+        artwork: resolveUrl(item.artwork),
+    }));
+}
+
+function setBrowseTree(tree) {
+    const children = {};
+
+    for(const parentId of Object.keys(tree)) {
+        children[parentId] = resolveBrowseItems(tree[parentId]);
+    }
+
+    return TrackPlayer.setBrowseTree(children);
+}
+
+function setBrowseChildren(parentId, items, page, pageSize) {
+    return TrackPlayer.setBrowseChildren(parentId, resolveBrowseItems(items),
+        page == null ? -1 : page, pageSize == null ? -1 : pageSize);
+}
+
 function registerPlaybackService(serviceFactory) {
     if (Platform.OS === 'android') {
         // Registers the headless task
@@ -153,6 +231,11 @@ module.exports.PITCH_ALGORITHM_LINEAR = TrackPlayer.PITCH_ALGORITHM_LINEAR;
 module.exports.PITCH_ALGORITHM_MUSIC = TrackPlayer.PITCH_ALGORITHM_MUSIC;
 module.exports.PITCH_ALGORITHM_VOICE = TrackPlayer.PITCH_ALGORITHM_VOICE;
 
+// Repeat Modes
+module.exports.REPEAT_OFF = TrackPlayer.REPEAT_OFF;
+module.exports.REPEAT_TRACK = TrackPlayer.REPEAT_TRACK;
+module.exports.REPEAT_QUEUE = TrackPlayer.REPEAT_QUEUE;
+
 // Rating Types
 module.exports.RATING_HEART = TrackPlayer.RATING_HEART;
 module.exports.RATING_THUMBS_UP_DOWN = TrackPlayer.RATING_THUMBS_UP_DOWN;
@@ -173,12 +256,22 @@ module.exports.addEventListener = addEventListener;
 // Player Queue Commands
 module.exports.add = add;
 module.exports.remove = remove;
+module.exports.setQueue = setQueue;
 module.exports.skip = TrackPlayer.skip;
+module.exports.move = TrackPlayer.move;
 module.exports.getQueue = TrackPlayer.getQueue;
+module.exports.getQueuePage = getQueuePage;
+module.exports.getQueueVersion = TrackPlayer.getQueueVersion;
 module.exports.skipToNext = TrackPlayer.skipToNext;
 module.exports.skipToPrevious = TrackPlayer.skipToPrevious;
 module.exports.updateMetadataForTrack = TrackPlayer.updateMetadataForTrack;
+module.exports.updateMetadataForTracks = TrackPlayer.updateMetadataForTracks;
 module.exports.removeUpcomingTracks = TrackPlayer.removeUpcomingTracks;
+module.exports.setShuffleMode = setShuffleMode;
+module.exports.getShuffleMode = TrackPlayer.getShuffleMode;
+module.exports.getShuffleOrder = TrackPlayer.getShuffleOrder;
+module.exports.setRepeatMode = TrackPlayer.setRepeatMode;
+module.exports.getRepeatMode = TrackPlayer.getRepeatMode;
 
 // Player Playback Commands
 module.exports.reset = TrackPlayer.reset;
@@ -198,6 +291,19 @@ module.exports.getPosition = TrackPlayer.getPosition;
 module.exports.getBufferedPosition = TrackPlayer.getBufferedPosition;
 module.exports.getState = TrackPlayer.getState;
 module.exports.getRate = TrackPlayer.getRate;
+module.exports.getProgress = getProgress;
+
+// Batching
+module.exports.executeBatch = executeBatch;
+
+// Browsing
+module.exports.setBrowseTree = setBrowseTree;
+module.exports.setBrowseChildren = setBrowseChildren;
+module.exports.setBrowseAllowedPackages = TrackPlayer.setBrowseAllowedPackages;
+
+// Diagnostics
+module.exports.getDiagnostics = TrackPlayer.getDiagnostics;
+module.exports.resetDiagnostics = TrackPlayer.resetDiagnostics;
 
 // Player Event Types
 module.exports.TrackPlayerEvents = require('./eventTypes');